@@ -0,0 +1,51 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * The fan-out of chat messages by the ChatDispatcher of a match: every call queues messagesPerFlush messages, as the reading threads do, and flushes them
+ * to all the chat connections, as the scheduler does every few milliseconds. Every connection copies the batch, like the OutboundQueue of a blocking
+ * connection does, but doesn't write it anywhere, so only the cost on the server threads is measured.
+ */
+public class ChatFanOutFixture implements IntSupplier {
+    private ChatDispatcher chatDispatcher;
+    private int messagesPerFlush;
+    private ByteBuffer message;
+    private byte[] lastCopy; // Kept, so the copies can't be optimized away
+    private int copied;
+
+    public ChatFanOutFixture(int numberOfConnections, int messagesPerFlush) {
+        this.messagesPerFlush = messagesPerFlush;
+        int messageLength = 100;
+        byte[] frame = new byte[2 + messageLength]; // The frame written by writeUTF
+        frame[0] = (byte) (messageLength >> 8);
+        frame[1] = (byte) messageLength;
+        for (int i = 2; i < frame.length; i++)
+            frame[i] = (byte) ('a' + i % 26);
+        message = ByteBuffer.wrap(frame);
+
+        List<ChatConnection> recipients = new ArrayList<>();
+        for (int i = 0; i < numberOfConnections; i++)
+            recipients.add(this::copy);
+        chatDispatcher = new ChatDispatcher(recipients, null, null); // No scheduler, the flushes are done below
+    }
+
+    private void copy(ByteBuffer message) {
+        byte[] copy = new byte[message.remaining()];
+        message.duplicate().get(copy);
+        lastCopy = copy;
+        copied += copy.length;
+    }
+
+    /**
+     * This method sends the messages of one flush to all connections and returns the number of bytes copied so far
+     */
+    @Override
+    public int getAsInt() {
+        for (int i = 0; i < messagesPerFlush; i++)
+            chatDispatcher.submit(message);
+        chatDispatcher.flush();
+        return copied;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * The collision check of Simulation.checkForDeadPlayers on trails of a given length. Every player has a trail of trailLength points, made by a random walk
+ * with the moves of Movement, and every call checks the front of every player against the TrailGrid, like one tick does.
+ * <p>
+ * The fronts are put on points of the trails, so the cells they are checked in are full, as they are late in a round.
+ * Used by the CollisionBenchmark, which can't use the classes of the game directly, since they are in the default package.
+ */
+public class CollisionFixture implements IntSupplier, GameConstants {
+    private static final int FRONTS = 1024; // The number of positions the fronts cycle through, so the same cells aren't checked every time
+
+    private int numberOfPlayers;
+    private TrailGrid trailGrid;
+    private double[] xFronts = new double[FRONTS], yFronts = new double[FRONTS];
+    private int next;
+
+    public CollisionFixture(int numberOfPlayers, int trailLength) {
+        this.numberOfPlayers = numberOfPlayers;
+        Random random = new Random(42); // Always the same trails, so results can be compared between runs
+        Trail[] trails = new Trail[numberOfPlayers];
+        for (int i = 0; i < numberOfPlayers; i++)
+            trails[i] = new Trail();
+        trailGrid = new TrailGrid(trails);
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            int x = Movement.toFixed(100 + random.nextInt(WIDTH - 200)), y = Movement.toFixed(100 + random.nextInt(HEIGHT - 200));
+            int angle = random.nextInt(360), direction = 0;
+            for (int point = 0; point < trailLength; point++) {
+                trails[i].add(Movement.toPixels(x), Movement.toPixels(y));
+                trailGrid.addNewestSegment((byte) i);
+
+                if (random.nextInt(20) == 0)
+                    direction = random.nextInt(3) - 1; // Keep turning the same way for a while, like a player holding a key
+                angle = Movement.turn(angle, direction);
+                int newX = Movement.moveX(x, angle), newY = Movement.moveY(y, angle);
+                if (Movement.toPixels(newX) < 50 || Movement.toPixels(newX) > WIDTH - 50 || Movement.toPixels(newY) < 50 || Movement.toPixels(newY) > HEIGHT - 50)
+                    angle = Movement.turn(angle, 30); // Turn around before hitting the side
+                else {
+                    x = newX;
+                    y = newY;
+                }
+            }
+        }
+
+        for (int i = 0; i < FRONTS; i++) {
+            Trail trail = trails[random.nextInt(numberOfPlayers)];
+            int point = random.nextInt(trail.size());
+            xFronts[i] = trail.getX(point) + random.nextDouble() * 20 - 10; // Near a trail, but not always on it
+            yFronts[i] = trail.getY(point) + random.nextDouble() * 20 - 10;
+        }
+    }
+
+    /**
+     * This method checks the fronts of all players once and returns the sum of the owners found, so the checks can't be optimized away
+     */
+    @Override
+    public int getAsInt() {
+        int sum = 0;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            sum += trailGrid.findOwner((byte) i, xFronts[next], yFronts[next]);
+            next = (next + 1) & (FRONTS - 1);
+        }
+        return sum;
+    }
+}
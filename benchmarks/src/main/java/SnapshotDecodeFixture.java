@@ -0,0 +1,60 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * The decoding of the snapshots in receiveGameInfo: every call decodes the next snapshot of a recorded round from a DataInputStream, like the client does.
+ * The snapshots are encoded before the benchmark from the states of SnapshotEncodeFixture.playRound, and are read from memory instead of a socket.
+ */
+public class SnapshotDecodeFixture implements IntSupplier {
+    private int numberOfPlayers;
+    private int numberOfSnapshots;
+    private ByteArrayInputStream bytes;
+    private DataInputStream in;
+    private SnapshotCodec.Decoder snapshotDecoder;
+    private int next;
+
+    public SnapshotDecodeFixture(int numberOfPlayers) {
+        this.numberOfPlayers = numberOfPlayers;
+        List<GameState> states = SnapshotEncodeFixture.playRound(numberOfPlayers);
+        numberOfSnapshots = states.size();
+
+        FrameBuffer stream = new FrameBuffer(256 * states.size()); // The snapshots of the round one after the other, as they arrive on the socket
+        SnapshotCodec.Encoder snapshotEncoder = new SnapshotCodec.Encoder(numberOfPlayers);
+        try {
+            for (GameState state : states)
+                snapshotEncoder.encode(stream, state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes = new ByteArrayInputStream(stream.toByteBuffer().array(), 0, stream.size());
+        in = new DataInputStream(bytes);
+    }
+
+    /**
+     * This method decodes the next snapshot and returns the sum of what the client reads from it. After the last snapshot the round starts again with a new decoder
+     */
+    @Override
+    public int getAsInt() {
+        if (next == 0) {
+            bytes.reset();
+            snapshotDecoder = new SnapshotCodec.Decoder(numberOfPlayers);
+        }
+        next = (next + 1) % numberOfSnapshots;
+
+        try {
+            snapshotDecoder.decode(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int sum = snapshotDecoder.getTick();
+        for (int i = 0; i < numberOfPlayers; i++)
+            if (!snapshotDecoder.isDead(i))
+                sum += (int) snapshotDecoder.getX(i) + (int) snapshotDecoder.getY(i) + snapshotDecoder.getAngle(i);
+        return sum;
+    }
+}
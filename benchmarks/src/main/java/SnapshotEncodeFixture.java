@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * The encoding of the snapshots in sendGameInfo: every call encodes the next state of a recorded round as a snapshot and as a full snapshot, like a tick of the GameEngine does.
+ * The states are those of a round played by the Simulation before the benchmark, so the deltas and the keyframes come in the same order as in a game.
+ */
+public class SnapshotEncodeFixture implements IntSupplier {
+    private List<GameState> states;
+    private SnapshotCodec.Encoder snapshotEncoder;
+    private FrameBuffer snapshotBuffer = new FrameBuffer(256), fullSnapshotBuffer = new FrameBuffer(256);
+    private int next;
+
+    public SnapshotEncodeFixture(int numberOfPlayers) {
+        states = playRound(numberOfPlayers);
+    }
+
+    /**
+     * This method plays a round with the Simulation and returns the state after every tick. The players turn now and then, but never for long, so the round lasts a while
+     */
+    static List<GameState> playRound(int numberOfPlayers) {
+        Simulation simulation = new Simulation(numberOfPlayers, 42);
+        Random random = new Random(42);
+        int[] directions = new int[numberOfPlayers];
+        List<GameState> states = new ArrayList<>();
+
+        simulation.startRound();
+        while (!simulation.isRoundOver()) {
+            for (int i = 0; i < numberOfPlayers; i++)
+                directions[i] = random.nextInt(4) == 0 ? random.nextInt(3) - 1 : 0;
+            simulation.step(directions);
+            states.add(simulation.getState());
+        }
+        return states;
+    }
+
+    /**
+     * This method encodes the next state and returns the size of the snapshot. After the last state the round starts again with a new encoder
+     */
+    @Override
+    public int getAsInt() {
+        if (next == 0)
+            snapshotEncoder = new SnapshotCodec.Encoder(states.get(0).getNumberOfPlayers());
+        GameState state = states.get(next);
+        next = (next + 1) % states.size();
+
+        try {
+            snapshotBuffer.reset();
+            snapshotEncoder.encode(snapshotBuffer, state);
+            fullSnapshotBuffer.reset();
+            SnapshotCodec.encodeFull(fullSnapshotBuffer, state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Can't happen, FrameBuffer writes to memory
+        }
+        return snapshotBuffer.size();
+    }
+}
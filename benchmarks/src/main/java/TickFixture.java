@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * One tick of the GameEngine without the network: the Simulation moves the players and checks for collisions, and the snapshot and the full snapshot
+ * are encoded into FrameBuffers. When a round is over a new one is started, like the engine does, so the trails have the lengths of real rounds.
+ * <p>
+ * The players change direction now and then, like players holding and releasing keys.
+ */
+public class TickFixture implements IntSupplier {
+    private int numberOfPlayers;
+    private Simulation simulation;
+    private SnapshotCodec.Encoder snapshotEncoder;
+    private FrameBuffer snapshotBuffer = new FrameBuffer(256), fullSnapshotBuffer = new FrameBuffer(256);
+    private Random random = new Random(42);
+    private int[] directions;
+
+    public TickFixture(int numberOfPlayers) {
+        this.numberOfPlayers = numberOfPlayers;
+        simulation = new Simulation(numberOfPlayers, 42);
+        directions = new int[numberOfPlayers];
+        startRound();
+    }
+
+    private void startRound() {
+        simulation.startRound();
+        snapshotEncoder = new SnapshotCodec.Encoder(numberOfPlayers);
+    }
+
+    /**
+     * This method calculates a tick and returns the size of its snapshot
+     */
+    @Override
+    public int getAsInt() {
+        for (int i = 0; i < numberOfPlayers; i++)
+            if (random.nextInt(10) == 0)
+                directions[i] = random.nextInt(3) - 1;
+
+        simulation.step(directions);
+        GameState state = simulation.getState();
+
+        try {
+            snapshotBuffer.reset();
+            snapshotEncoder.encode(snapshotBuffer, state);
+            fullSnapshotBuffer.reset();
+            SnapshotCodec.encodeFull(fullSnapshotBuffer, state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Can't happen, FrameBuffer writes to memory
+        }
+
+        if (simulation.isRoundOver())
+            startRound();
+        return snapshotBuffer.size();
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sending the chat messages of one flush of the ChatDispatcher to every chat connection of a match. A match has at most 7 players, the larger counts show how the fan-out grows
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatBenchmark {
+    @Param({"7", "100"})
+    public int connections;
+
+    @Param({"1", "10"})
+    public int messagesPerFlush;
+
+    private IntSupplier fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = Fixtures.create("ChatFanOutFixture", connections, messagesPerFlush);
+    }
+
+    @Benchmark
+    public int flush() {
+        return fixture.getAsInt();
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The collision check of one tick (checkForDeadPlayers) for every player, with trails of different lengths. 2000 points is about 50 seconds of a round at the default tick rate
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    @Param({"2", "7"})
+    public int players;
+
+    @Param({"100", "500", "2000"})
+    public int trailLength;
+
+    private IntSupplier fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = Fixtures.create("CollisionFixture", players, trailLength);
+    }
+
+    @Benchmark
+    public int checkForDeadPlayers() {
+        return fixture.getAsInt();
+    }
+}
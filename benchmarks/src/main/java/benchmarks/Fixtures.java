@@ -0,0 +1,23 @@
+package benchmarks;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Creates the fixtures the benchmarks run. The fixtures use the classes of the game, which are in the default package, so they are in the default
+ * package too and the benchmarks, which JMH wants in a package, create them by name. The call through IntSupplier costs next to nothing compared to what they measure
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static IntSupplier create(String className, Object... arguments) {
+        try {
+            Class<?>[] types = new Class<?>[arguments.length];
+            for (int i = 0; i < arguments.length; i++)
+                types[i] = arguments[i] instanceof Integer ? int.class : arguments[i].getClass();
+            return (IntSupplier) Class.forName(className).getConstructor(types).newInstance(arguments);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create " + className, e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding a tick's snapshots on the server (sendGameInfo) and decoding a snapshot on the client (receiveGameInfo)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"2", "7"})
+    public int players;
+
+    private IntSupplier encodeFixture, decodeFixture;
+
+    @Setup
+    public void setUp() {
+        encodeFixture = Fixtures.create("SnapshotEncodeFixture", players);
+        decodeFixture = Fixtures.create("SnapshotDecodeFixture", players);
+    }
+
+    @Benchmark
+    public int encode() {
+        return encodeFixture.getAsInt();
+    }
+
+    @Benchmark
+    public int decode() {
+        return decodeFixture.getAsInt();
+    }
+}
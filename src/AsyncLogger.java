@@ -0,0 +1,105 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prints the log of the server on its own thread, so the threads that log, e.g. the tick of a match, never wait for the console.
+ * <p>
+ * A line is put in a queue and printed later, in the order it was logged. If the console is so slow that the queue fills up, lines are dropped
+ * and counted instead of holding up the server. What is waiting is printed when the JVM exits.
+ */
+public class AsyncLogger implements Runnable {
+    private static final int CAPACITY = 8192; // Lines waiting to be printed. Far more than the server logs in a second
+    private static final AsyncLogger LOGGER = new AsyncLogger();
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(CAPACITY); // A line, or a Failure that is formatted when it is printed
+    private final LongAdder dropped = new LongAdder();
+
+    static {
+        Thread thread = new Thread(LOGGER, "Logger");
+        thread.setDaemon(true); // The log must not keep the server running
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(LOGGER::drain));
+    }
+
+    private AsyncLogger() {
+    }
+
+    /**
+     * This method queues a line to be printed and returns right away. It can be called from any thread
+     */
+    public static void log(String line) {
+        if (!LOGGER.queue.offer(line))
+            LOGGER.dropped.increment();
+    }
+
+    /**
+     * This method queues a line followed by the stack trace of the exception. The stack trace is formatted by the logger thread, so the calling thread,
+     * e.g. a tick, only queues the exception
+     */
+    public static void log(String line, Throwable exception) {
+        if (!LOGGER.queue.offer(new Failure(line, exception)))
+            LOGGER.dropped.increment();
+    }
+
+    /**
+     * This method returns the number of lines dropped because the queue was full
+     */
+    public static long getDropped() {
+        return LOGGER.dropped.sum();
+    }
+
+    @Override
+    public void run() {
+        List<Object> lines = new ArrayList<>();
+        try {
+            while (true) {
+                lines.add(queue.take());
+                queue.drainTo(lines); // Print everything that is waiting with one call
+                print(lines);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Object> lines = new ArrayList<>();
+        queue.drainTo(lines);
+        print(lines);
+    }
+
+    private void print(List<Object> lines) {
+        StringBuilder text = new StringBuilder();
+        for (Object line : lines)
+            text.append(line).append(System.lineSeparator());
+        System.out.print(text);
+        System.out.flush();
+        lines.clear();
+    }
+
+    /**
+     * A line with the exception that caused it. Printed as one entry, so the lines of the stack trace aren't mixed with other lines
+     */
+    private static class Failure {
+        private final String line;
+        private final Throwable exception;
+
+        Failure(String line, Throwable exception) {
+            this.line = line;
+            this.exception = exception;
+        }
+
+        @Override
+        public String toString() {
+            StringWriter text = new StringWriter();
+            text.append(line).append(": ");
+            exception.printStackTrace(new PrintWriter(text));
+            return text.toString().stripTrailing();
+        }
+    }
+}
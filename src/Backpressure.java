@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what happens when a connection can't keep up, i.e. its outbound queue is full, and keeps count of how full the queue is.
+ * Used by the OutboundQueue of the blocking transport and by the connections of the NioTransport.
+ * <p>
+ * A snapshot that is dropped breaks the deltas the client decodes, so after a drop the next snapshot sent must be a full snapshot.
+ */
+public class Backpressure {
+    private final ServerOptions.SlowClientPolicy policy;
+    private final long timeout; // How long the queue may stay full before the connection is closed, in nanoseconds. Only used by DISCONNECT
+    private final AtomicInteger depth = new AtomicInteger(), maxDepth = new AtomicInteger(); // Bytes waiting to be written
+    private final AtomicLong dropped = new AtomicLong(); // Messages dropped since the last reset
+    private final AtomicLong messagesSent = new AtomicLong(), bytesSent = new AtomicLong(); // Since the connection was opened. Shown by the Metrics
+    private volatile boolean resync; // Whether a snapshot has been dropped since the last one that was queued
+    private volatile long fullSince; // When the queue became full, or 0 if it isn't
+
+    public Backpressure(ServerOptions options) {
+        policy = options.getSlowClientPolicy();
+        timeout = options.getSlowClientTimeout();
+    }
+
+    public ServerOptions.SlowClientPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * This method returns whether the next snapshot must be a full snapshot
+     */
+    public boolean needsFullSnapshot() {
+        return resync;
+    }
+
+    /**
+     * This method is called when a message has been queued
+     */
+    public void queued(int bytes, boolean snapshot) {
+        maxDepth.accumulateAndGet(depth.addAndGet(bytes), Math::max);
+        fullSince = 0;
+        if (snapshot)
+            resync = false;
+    }
+
+    /**
+     * This method is called when a message has been written to the socket, or removed from the queue without being written
+     */
+    public void dequeued(int bytes) {
+        depth.addAndGet(-bytes);
+    }
+
+    /**
+     * This method is called when a message has been handed to the network: written to the socket, put in the outbound buffer of a non-blocking connection, or sent as a datagram
+     */
+    public void sent(int bytes) {
+        if (bytes == 0)
+            return; // Nothing was sent, e.g. a datagram to a client whose address isn't known yet
+        messagesSent.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * This method is called when a message didn't fit in the queue and was dropped. It returns whether the connection must be closed
+     */
+    public boolean dropped(boolean snapshot) {
+        dropped.incrementAndGet();
+        if (snapshot)
+            resync = true;
+
+        if (policy != ServerOptions.SlowClientPolicy.DISCONNECT)
+            return false;
+
+        long now = System.nanoTime();
+        if (fullSince == 0)
+            fullSince = now;
+        return now - fullSince >= timeout;
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * This method resets the largest depth and the number of dropped messages, so the next toString covers the time since now
+     */
+    public void reset() {
+        maxDepth.set(depth.get());
+        dropped.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "depth=" + depth.get() + "B max=" + maxDepth.get() + "B dropped=" + dropped.get();
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A player without a window, for load testing the server. Started by the LoadDriver, which starts thousands of them.
+ * <p>
+ * A bot speaks the same protocol as the GameClient: it connects to the game port and the chat port, reads its ID and the lobby messages, says it is ready
+ * and reads the snapshots, from the game connection or as UDP datagrams. With a mux port it sends the game and the chat over one connection instead, see MuxSocket. It says it is ready when the match is full, or when nobody has joined for
+ * LOBBY_WAIT milliseconds, so a match with fewer players still starts.
+ * <p>
+ * It steers by itself. It keeps the trails of all players in a TrailGrid, like the Simulation does, and every tick it looks LOOKAHEAD ticks ahead in the
+ * direction it is going. If it would hit a side or a trail, it picks the direction in which it survives longest.
+ */
+public class Bot implements Runnable, GameConstants {
+    private static final int LOBBY_WAIT = 2000; // How long a bot waits for more players before saying it is ready, in milliseconds
+    private static final int LOOKAHEAD = 20; // How many ticks ahead a bot looks for sides and trails
+    private static final byte[] DIRECTIONS = {0, -1, 1}; // Tried in this order, so a bot goes straight if nothing is in the way
+
+    private int botId;
+    private String host;
+    private int portGame, portChat, portMux; // portMux is 0 if the bot uses a game connection and a chat connection
+    private int playersPerMatch; // The number of players a bot waits for before saying it is ready
+    private Statistics statistics;
+    private Random random;
+    private Socket socketGame, socketChat;
+    private MuxSocket muxSocket; // The connection if the bot uses the mux port, otherwise null
+    private DataInputStream dataInputStreamGame;
+    private DataOutputStream dataOutputStreamGame;
+    private UdpSnapshotReceiver udpSnapshotReceiver; // Receives the snapshots if the server sends them as UDP datagrams, otherwise null
+    private byte numberOfPlayers, playerId;
+    private int tickRate;
+    private boolean[] deadPlayers;
+    private Trail[] trails;
+    private TrailGrid trailGrid;
+    private SnapshotCodec.Decoder snapshotDecoder;
+    private byte direction; // The direction sent last
+    private int wanderTicks; // Ticks left of turning in a random direction. Keeps the bots from all playing the same way
+    private ArrayDeque<InputMessage> recentInputs = new ArrayDeque<>();
+    private int inputSequence;
+    private long firstArrival; // The arrival time of the first snapshot of the round minus its tick period times its tick. The earliest seen in the round
+    private long udpBytes; // The bytes the UDP receiver had received when they were last added to the statistics
+
+    public Bot(int botId, String host, int portGame, int portChat, int portMux, int playersPerMatch, Statistics statistics) {
+        this.botId = botId;
+        this.host = host;
+        this.portGame = portGame;
+        this.portChat = portChat;
+        this.portMux = portMux;
+        this.playersPerMatch = Math.min(playersPerMatch, MAXPLAYERS);
+        this.statistics = statistics;
+        random = new Random(botId);
+    }
+
+    @Override
+    public void run() {
+        try {
+            InputStream inputStream;
+            OutputStream outputStream;
+            if (portMux != 0) {
+                muxSocket = MuxSocket.open(new Socket(host, portMux));
+                socketGame = muxSocket.getSocket();
+                inputStream = muxSocket.getInputStream(MuxSocket.GAME);
+                outputStream = muxSocket.getOutputStream(MuxSocket.GAME);
+            } else {
+                socketGame = new Socket(host, portGame);
+                socketChat = new Socket(host, portChat); // Connected before anything is read, since the server waits for it before it sends the ID
+                socketGame.setTcpNoDelay(true);
+                inputStream = socketGame.getInputStream();
+                outputStream = socketGame.getOutputStream();
+            }
+            statistics.connected.increment();
+            dataInputStreamGame = new DataInputStream(new BufferedInputStream(new CountingInputStream(inputStream)));
+            dataOutputStreamGame = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+            playerId = dataInputStreamGame.readByte();
+            receivePlayerInfo();
+            statistics.playing.increment();
+
+            for (int round = 0; round < ROUNDSTOTAL; round++) {
+                startRound(round);
+                playRound();
+                statistics.rounds.increment();
+            }
+            statistics.finished.increment();
+        } catch (IOException e) {
+            statistics.failed.increment();
+            System.out.println("Bot " + botId + ": " + e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * This method reads the lobby messages until all players are ready, and says the bot is ready when the match is full or nobody has joined for a while
+     */
+    private void receivePlayerInfo() throws IOException {
+        boolean ready = false;
+        setSoTimeout(LOBBY_WAIT);
+
+        while (true) {
+            byte command;
+            try {
+                command = dataInputStreamGame.readByte();
+            } catch (SocketTimeoutException e) { // Nobody has joined for a while. Start with the players there are
+                sendReady();
+                ready = true;
+                setSoTimeout(0);
+                continue;
+            }
+
+            if (command == 0) { // 0 = number of players
+                numberOfPlayers = dataInputStreamGame.readByte();
+                if (!ready && numberOfPlayers >= playersPerMatch) {
+                    sendReady();
+                    ready = true;
+                    setSoTimeout(0);
+                }
+            } else if (command == 1) { // 1 = player ready
+                dataInputStreamGame.readByte();
+            } else if (command == 2) { // 2 = all players ready
+                tickRate = dataInputStreamGame.readShort();
+                int udpToken = dataInputStreamGame.readInt();
+                if (udpToken != 0)
+                    udpSnapshotReceiver = new UdpSnapshotReceiver(socketGame.getInetAddress(), portGame, udpToken);
+                setSoTimeout(0);
+                return;
+            }
+        }
+    }
+
+    private void sendReady() throws IOException {
+        dataOutputStreamGame.writeBoolean(true);
+        dataOutputStreamGame.flush();
+    }
+
+    private void startRound(int round) {
+        deadPlayers = new boolean[numberOfPlayers];
+        trails = new Trail[numberOfPlayers];
+        for (int i = 0; i < numberOfPlayers; i++)
+            trails[i] = new Trail();
+        trailGrid = new TrailGrid(trails);
+        snapshotDecoder = new SnapshotCodec.Decoder(numberOfPlayers);
+        direction = 0; // The server starts every round going straight
+        wanderTicks = 0;
+        firstArrival = Long.MAX_VALUE;
+        if (udpSnapshotReceiver != null)
+            udpSnapshotReceiver.startRound(round);
+    }
+
+    private void playRound() throws IOException {
+        long tickPeriod = 1_000_000_000L / tickRate;
+
+        while (true) {
+            DataInput snapshot = udpSnapshotReceiver != null ? udpSnapshotReceiver.receive() : dataInputStreamGame;
+            if (snapshot == null) // The next round has started, and the end of this one was lost
+                return;
+            snapshotDecoder.decode(snapshot);
+            long arrival = System.nanoTime();
+
+            // How much later the snapshot arrived than the earliest snapshot of the round says it could have. Grows when the server falls behind or the network queues up
+            int tick = snapshotDecoder.getTick() & 0xFFFF;
+            firstArrival = Math.min(firstArrival, arrival - tick * tickPeriod);
+            statistics.snapshotDelay.record(arrival - tick * tickPeriod - firstArrival);
+            statistics.snapshots.increment();
+            if (udpSnapshotReceiver != null) {
+                statistics.bytes.add(udpSnapshotReceiver.getBytesReceived() - udpBytes);
+                udpBytes = udpSnapshotReceiver.getBytesReceived();
+            }
+
+            int numberOfPlayersAlive = 0;
+            for (int i = 0; i < numberOfPlayers; i++) {
+                if (!deadPlayers[i]) {
+                    deadPlayers[i] = snapshotDecoder.isDead(i);
+                    trails[i].add(snapshotDecoder.getX(i), snapshotDecoder.getY(i));
+                    trailGrid.addNewestSegment((byte) i);
+                }
+                if (!deadPlayers[i])
+                    numberOfPlayersAlive++;
+            }
+
+            if (numberOfPlayers > 1 ? numberOfPlayersAlive <= 1 : numberOfPlayersAlive == 0) // The same rule as the GameClient
+                return;
+
+            if (!deadPlayers[playerId])
+                steer(tick);
+        }
+    }
+
+    /**
+     * This method picks the direction of the next tick and sends it if it has changed
+     */
+    private void steer(int tick) throws IOException {
+        int x = Movement.toFixed(snapshotDecoder.getX(playerId)), y = Movement.toFixed(snapshotDecoder.getY(playerId));
+        int angle = snapshotDecoder.getAngle(playerId);
+
+        byte newDirection = direction;
+        if (wanderTicks > 0) {
+            if (--wanderTicks == 0)
+                newDirection = 0; // Go straight again
+        } else if (random.nextInt(40) == 0) { // Turn for a while now and then
+            newDirection = (byte) (random.nextInt(3) - 1);
+            wanderTicks = 5 + random.nextInt(15);
+        }
+
+        if (ticksToCrash(x, y, angle, newDirection) < LOOKAHEAD) {
+            int longest = -1;
+            for (byte candidate : DIRECTIONS) {
+                int ticks = ticksToCrash(x, y, angle, candidate);
+                if (ticks > longest) {
+                    longest = ticks;
+                    newDirection = candidate;
+                }
+            }
+            wanderTicks = 0;
+        }
+
+        if (newDirection != direction)
+            sendInput(newDirection, tick + 1);
+    }
+
+    // Returns the number of ticks the bot can go in the direction before it hits a side or a trail, at most LOOKAHEAD
+    private int ticksToCrash(int x, int y, int angle, int direction) {
+        for (int ticks = 0; ticks < LOOKAHEAD; ticks++) {
+            angle = Movement.turn(angle, direction);
+            x = Movement.moveX(x, angle);
+            y = Movement.moveY(y, angle);
+            double xPixels = Movement.toPixels(x), yPixels = Movement.toPixels(y);
+            if (xPixels < RADIUS || xPixels > WIDTH - RADIUS || yPixels < RADIUS || yPixels > HEIGHT - RADIUS || trailGrid.findOwner(playerId, xPixels, yPixels) != -1)
+                return ticks;
+        }
+        return LOOKAHEAD;
+    }
+
+    /**
+     * This method sends a change of direction together with the last few changes, like the GameClient does. The bot doesn't predict, so the input is for the next tick
+     */
+    private void sendInput(byte direction, int tick) throws IOException {
+        this.direction = direction;
+        recentInputs.addLast(new InputMessage(inputSequence++, tick, direction));
+        if (recentInputs.size() > 4)
+            recentInputs.removeFirst();
+
+        InputMessage.write(dataOutputStreamGame, recentInputs);
+        dataOutputStreamGame.flush();
+        statistics.inputs.increment();
+    }
+
+    // Sets the timeout of the reads of the game connection
+    private void setSoTimeout(int timeout) throws IOException {
+        if (muxSocket != null)
+            muxSocket.setSoTimeout(timeout);
+        else
+            socketGame.setSoTimeout(timeout);
+    }
+
+    private void close() {
+        try {
+            if (socketGame != null)
+                socketGame.close();
+            if (socketChat != null)
+                socketChat.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (udpSnapshotReceiver != null)
+            udpSnapshotReceiver.close();
+    }
+
+    /**
+     * Counts the bytes read from the game connection
+     */
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                statistics.bytes.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                statistics.bytes.add(read);
+            return read;
+        }
+    }
+
+    /**
+     * What all the bots of a LoadDriver have done. Added to by all bots at once
+     */
+    public static class Statistics {
+        final LongAdder connected = new LongAdder(), playing = new LongAdder(), finished = new LongAdder(), failed = new LongAdder();
+        final LongAdder rounds = new LongAdder(), snapshots = new LongAdder(), inputs = new LongAdder(), bytes = new LongAdder();
+        final LatencyHistogram snapshotDelay = new LatencyHistogram("snapshot delay");
+    }
+}
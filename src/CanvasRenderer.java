@@ -0,0 +1,92 @@
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+import java.util.List;
+
+/**
+ * Draws the game on two canvases. The trails are drawn on a canvas that is only cleared when a round starts, so every frame only draws the newest
+ * segments. The circles are drawn on a canvas on top of it, where only the old circles are erased. The time a frame takes doesn't grow with the length of the trails.
+ * <p>
+ * Chosen with the parameter --renderer=canvas
+ */
+public class CanvasRenderer extends InterpolatingRenderer {
+    private Canvas trailLayer = new Canvas(WIDTH, HEIGHT), headLayer = new Canvas(WIDTH, HEIGHT);
+    private double[] trailX, trailY; // Where the trails end, i.e. where the next segments start
+    private double[] headX, headY; // Where the circles were drawn in the last frame
+    private boolean[] trailStarted; // Whether the trail of a player has been drawn in this round
+    private boolean started; // Whether the circles have been drawn in this round
+
+    public CanvasRenderer(Pane pane, Color[] colors) {
+        super(pane, colors);
+
+        GraphicsContext trails = trailLayer.getGraphicsContext2D();
+        trails.setLineWidth(STROKE_WIDTH);
+        trails.setLineCap(StrokeLineCap.ROUND); // Segments drawn in different frames join without gaps
+        trails.setLineJoin(StrokeLineJoin.ROUND);
+        headLayer.getGraphicsContext2D().setFill(Color.YELLOW);
+    }
+
+    @Override
+    protected void showRound(int numberOfPlayers) {
+        trailX = new double[numberOfPlayers];
+        trailY = new double[numberOfPlayers];
+        headX = new double[numberOfPlayers];
+        headY = new double[numberOfPlayers];
+        trailStarted = new boolean[numberOfPlayers];
+        started = false;
+
+        trailLayer.getGraphicsContext2D().clearRect(0, 0, WIDTH, HEIGHT);
+        headLayer.getGraphicsContext2D().clearRect(0, 0, WIDTH, HEIGHT);
+        pane.getChildren().setAll(trailLayer, headLayer);
+    }
+
+    @Override
+    protected void drawTrails(List<List<Double>> newPoints) {
+        GraphicsContext trails = trailLayer.getGraphicsContext2D();
+
+        for (int i = 0; i < newPoints.size(); i++) {
+            List<Double> points = newPoints.get(i);
+            if (points.isEmpty())
+                continue;
+
+            // Draw the new segments, starting where the trail ended
+            trails.setStroke(colors[i]);
+            trails.beginPath();
+            int first = 0;
+            if (trailStarted[i])
+                trails.moveTo(trailX[i], trailY[i]);
+            else {
+                trails.moveTo(points.get(0), points.get(1));
+                first = 2;
+            }
+            for (int j = first; j < points.size(); j += 2)
+                trails.lineTo(points.get(j), points.get(j + 1));
+            trails.stroke();
+
+            trailStarted[i] = true;
+            trailX[i] = points.get(points.size() - 2);
+            trailY[i] = points.get(points.size() - 1);
+        }
+    }
+
+    @Override
+    protected void drawHeads(double[] xCoordinates, double[] yCoordinates) {
+        GraphicsContext heads = headLayer.getGraphicsContext2D();
+
+        // Erase all old circles before drawing the new ones, so erasing one doesn't cut into another
+        if (started)
+            for (int i = 0; i < headX.length; i++)
+                heads.clearRect(headX[i] - RADIUS - 1, headY[i] - RADIUS - 1, 2 * RADIUS + 2, 2 * RADIUS + 2);
+
+        for (int i = 0; i < headX.length; i++) {
+            headX[i] = xCoordinates[i];
+            headY[i] = yCoordinates[i];
+            heads.fillOval(headX[i] - RADIUS, headY[i] - RADIUS, 2 * RADIUS, 2 * RADIUS);
+        }
+        started = true;
+    }
+}
@@ -0,0 +1,11 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A connection to a player on the chat port. Implemented by the thread-per-player ChatClientHandler, by the connections of the NioTransport and by those of the MuxTransport
+ */
+public interface ChatConnection {
+    /**
+     * This method sends chat messages. The message is one or more frames written by writeUTF, see ChatDispatcher. It must not be modified, and it is only valid during the call
+     */
+    void receiveChatMessage(ByteBuffer message);
+}
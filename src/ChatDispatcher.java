@@ -0,0 +1,79 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the chat messages of a match to everyone in it. The threads that read the messages only put them in a queue, and every FLUSH_INTERVAL the
+ * messages that have arrived are sent together as one batch, so a busy chat costs one send per recipient per flush instead of one per message.
+ * <p>
+ * A batch is the frames written by writeUTF one after the other, so the client reads it with readUTF like single messages.
+ * The flushes run on the scheduler of the server, and only while there are messages to send. Only one flush of a match runs at a time.
+ */
+public class ChatDispatcher {
+    private static final long FLUSH_INTERVAL = 5; // Milliseconds. Short enough that nobody notices, long enough to catch the messages of a busy chat together
+    private static final int MAX_BATCH = 4096; // Bytes. A larger batch is split over several flushes, so it fits in the outbound buffer of a non-blocking connection
+
+    private List<ChatConnection> recipients; // The chat connections of the match. Read at every flush, so new connections get the next batch
+    private ScheduledExecutorService scheduler;
+    private Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>(); // Added to by all the reading threads of the match, taken out only by the flush
+    private AtomicBoolean scheduled = new AtomicBoolean(); // Whether a flush is scheduled or running
+    private ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH); // Reused by every flush, since the recipients copy what they send
+    private Runnable onBatch; // Called for every batch sent, e.g. to count it
+
+    /**
+     * The scheduler may be null, and the caller then calls flush itself
+     */
+    public ChatDispatcher(List<ChatConnection> recipients, ScheduledExecutorService scheduler, Runnable onBatch) {
+        this.recipients = recipients;
+        this.scheduler = scheduler;
+        this.onBatch = onBatch;
+    }
+
+    /**
+     * This method queues a chat message, the frame written by writeUTF, and makes sure a flush is scheduled. The message is copied, so it is only used during the call
+     */
+    public void submit(ByteBuffer message) {
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate()).flip();
+        queue.add(copy);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (scheduler != null && scheduled.compareAndSet(false, true))
+            scheduler.schedule(this::flush, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method sends the messages that are waiting, as batches of at most MAX_BATCH bytes. A message larger than that is sent alone
+     */
+    public void flush() {
+        try {
+            ByteBuffer message;
+            while ((message = queue.peek()) != null) {
+                if (message.remaining() > batch.capacity())
+                    batch = ByteBuffer.allocate(message.remaining()); // Rare, since chat messages are short. Kept for the next large one
+
+                batch.clear();
+                while ((message = queue.peek()) != null && message.remaining() <= batch.remaining())
+                    batch.put(queue.poll());
+                batch.flip();
+
+                for (ChatConnection chatConnection : recipients)
+                    chatConnection.receiveChatMessage(batch);
+                if (onBatch != null)
+                    onBatch.run();
+            }
+        } catch (Exception e) {
+            AsyncLogger.log("Chat flush failed", e); // An exception thrown out of a scheduled task is never seen
+        } finally {
+            scheduled.set(false);
+            if (!queue.isEmpty()) // A message may have been queued after the queue was found empty, and its submit saw that a flush was running
+                scheduleFlush();
+        }
+    }
+}
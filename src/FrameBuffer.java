@@ -0,0 +1,39 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable buffer that a message is written into with the methods of DataOutputStream.
+ * The message can then be handed to any number of connections as a ByteBuffer without copying it.
+ */
+public class FrameBuffer extends DataOutputStream {
+    public FrameBuffer(int size) {
+        super(new Bytes(size));
+    }
+
+    /**
+     * This method empties the buffer, so a new message can be written into it
+     */
+    public void reset() {
+        ((Bytes) out).reset();
+        written = 0;
+    }
+
+    /**
+     * This method returns the message as a ByteBuffer backed by the buffer. It is only valid until the buffer is reset
+     */
+    public ByteBuffer toByteBuffer() {
+        Bytes bytes = (Bytes) out;
+        return ByteBuffer.wrap(bytes.getBuffer(), 0, bytes.size());
+    }
+
+    private static class Bytes extends ByteArrayOutputStream {
+        Bytes(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -10,18 +10,22 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Polyline;
 import javafx.stage.Stage;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.util.ArrayList;
 
 public class GameClient extends Application {
     private String defaultHost = "localhost";
-    private int portGame = 8000, portChat = 9000;
+    private int portGame = 8000, portChat = 9000, portSpectator = 8001, portMux = 8002;
     private DataOutputStream dataOutputStreamGame;
     private DataInputStream dataInputStreamGame;
     private DataOutputStream dataOutputStreamChat;
@@ -33,7 +37,9 @@ public class GameClient extends Application {
 
     @Override // Override the start method in the Application class
     public void start(Stage primaryStage) {
-        GameView gameView = new GameView();
+        GameView gameView = new GameView(getParameters().getNamed().getOrDefault("renderer", "shapes")); // E.g. "java GameClient --renderer=canvas"
+        boolean spectate = Boolean.parseBoolean(getParameters().getNamed().get("spectate")); // "java GameClient --spectate=true" watches a match instead of playing
+        boolean mux = !spectate && Boolean.parseBoolean(getParameters().getNamed().get("mux")); // "java GameClient --mux=true" sends the game and the chat over one connection, see MuxSocket
         Pane pane = gameView.getPane();
 
         gridPanePlayers.setPadding(new Insets(10));
@@ -82,19 +88,30 @@ public class GameClient extends Application {
 
         buttonConnect.setOnAction(event -> {
             defaultHost = textFieldHost.getText().length() > 0 ? textFieldHost.getText() : defaultHost;
-            portGame = textFieldPort.getText().length() > 0 ? Integer.parseInt(textFieldPort.getText()) : 8000;
+            int port = textFieldPort.getText().length() > 0 ? Integer.parseInt(textFieldPort.getText()) : spectate ? portSpectator : mux ? portMux : portGame;
 
             try {
-                Socket socketGame = new Socket(defaultHost, portGame); // Create a socket to connect to the server
-                System.out.println("Connected to game server");
-                gameView.setSocketGame(socketGame);
-                new Thread(gameView).start();
-
-                Socket socketChat = new Socket(defaultHost, portChat);
-                System.out.println("Connected to chat server");
-                new Thread(new ChatView(socketChat)).start();
+                if (mux) {
+                    MuxSocket muxSocket = MuxSocket.open(new Socket(defaultHost, port)); // One connection for both the game and the chat
+                    System.out.println("Connected to multiplexed server");
+                    gameView.setMuxSocket(muxSocket, portGame);
+                    new Thread(gameView).start();
+                    new Thread(new ChatView(muxSocket.getInputStream(MuxSocket.CHAT), muxSocket.getOutputStream(MuxSocket.CHAT))).start();
+                } else {
+                    Socket socketGame = new Socket(defaultHost, port); // Create a socket to connect to the server
+                    System.out.println("Connected to " + (spectate ? "spectator" : "game") + " server");
+                    gameView.setSocketGame(socketGame);
+                    new Thread(gameView).start();
+
+                    if (!spectate) { // A spectator can't chat, since the chat connection of a player belongs to his match
+                        Socket socketChat = new Socket(defaultHost, portChat);
+                        System.out.println("Connected to chat server");
+                        new Thread(new ChatView(socketChat.getInputStream(), socketChat.getOutputStream())).start();
+                    }
+                }
 
                 buttonReady.requestFocus();
+                buttonReady.setDisable(spectate); // A spectator is never asked whether he is ready
                 buttonConnect.setDisable(true); // Disable the connect button when successfully connected
             } catch (IOException e) {
                 e.printStackTrace();
@@ -104,6 +121,7 @@ public class GameClient extends Application {
         buttonReady.setOnAction(event -> {
             try {
                 dataOutputStreamGame.writeBoolean(true);
+                dataOutputStreamGame.flush();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -126,20 +144,12 @@ public class GameClient extends Application {
     }
 
     class ChatView implements Runnable {
-        private Socket socketChat;
-
-        public ChatView(Socket socketChat) {
-            this.socketChat = socketChat;
-            initializeStreams();
-        }
-
-        private void initializeStreams() {
-            try {
-                dataOutputStreamChat = new DataOutputStream(socketChat.getOutputStream());
-                dataInputStreamChat = new DataInputStream(socketChat.getInputStream());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        /**
+         * The streams are those of the chat socket, or of the chat channel of a MuxSocket
+         */
+        public ChatView(InputStream inputStream, OutputStream outputStream) {
+            dataOutputStreamChat = new DataOutputStream(outputStream);
+            dataInputStreamChat = new DataInputStream(inputStream);
         }
 
         @Override
@@ -157,20 +167,38 @@ public class GameClient extends Application {
 
     class GameView implements Runnable, GameConstants {
         private Socket socketGame;
+        private InputStream inputStream; // Of the game socket, or of the game channel of a MuxSocket
+        private OutputStream outputStream;
+        private int udpPort; // Where the snapshots come from if they are sent as UDP datagrams, i.e. the game port of the server
         private Pane pane = new Pane();
         private Label labelId = new Label("ID"), labelReady = new Label("Ready?"), labelAlive = new Label("Alive?"), labelScore = new Label("Score");
-        private Circle[] circles;
-        private Polyline[] polylines;
+        private GameRenderer gameRenderer;
         private byte numberOfPlayers, playerId, roundsPlayed;
+        private int tickRate; // The number of snapshots the server sends per second
         private byte[] scores;
         private double[] xCoordinates, yCoordinates;
         private boolean keydownLeft, keydownRight;
         private boolean[] deadPlayers, readyPlayers;
+        private SnapshotCodec.Decoder snapshotDecoder;
+        private UdpSnapshotReceiver udpSnapshotReceiver; // Receives the snapshots if the server sends them as UDP datagrams, otherwise null
+        private volatile Predictor predictor; // Predicts where the local player is. Replaced every round by the network thread and used by the FX thread
+        private InputSender inputSender; // Sends the changes of direction. Created when the streams are open
         private Color[] colors = {Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE, Color.PURPLE, Color.PINK, Color.TEAL};
 
-        public GameView() {
+        public GameView(String renderer) {
             setupView();
             drawSidebar();
+
+            switch (renderer) {
+                case "shapes": // A Polyline and a Circle per player
+                    gameRenderer = new ShapeRenderer(pane, colors);
+                    break;
+                case "canvas": // Draws only what is new every frame, so long rounds don't get slower
+                    gameRenderer = new CanvasRenderer(pane, colors);
+                    break;
+                default:
+                    throw new IllegalArgumentException("The renderer must be shapes or canvas: " + renderer);
+            }
         }
 
         private void setupView() {
@@ -215,8 +243,22 @@ public class GameClient extends Application {
             return playerId;
         }
 
-        private void setSocketGame(Socket socketGame) {
+        private void setSocketGame(Socket socketGame) throws IOException {
             this.socketGame = socketGame;
+            socketGame.setTcpNoDelay(true); // Send key presses right away
+            inputStream = socketGame.getInputStream();
+            outputStream = socketGame.getOutputStream();
+            udpPort = socketGame.getPort();
+        }
+
+        /**
+         * This method makes the view use the game channel of the connection. The snapshots are still sent to the game port if they are sent as UDP datagrams
+         */
+        private void setMuxSocket(MuxSocket muxSocket, int portGame) {
+            socketGame = muxSocket.getSocket();
+            inputStream = muxSocket.getInputStream(MuxSocket.GAME);
+            outputStream = muxSocket.getOutputStream(MuxSocket.GAME);
+            udpPort = portGame;
         }
 
         @Override
@@ -228,7 +270,7 @@ public class GameClient extends Application {
                 System.out.println("Streams open");
 
                 receiveId();
-                System.out.println("Player number: " + playerId);
+                System.out.println(isSpectator() ? "Spectating" : "Player number: " + playerId);
 
                 System.out.println("Waiting for all ready");
                 receivePlayerInfo();
@@ -236,20 +278,19 @@ public class GameClient extends Application {
 
                 scores = new byte[numberOfPlayers];
 
-                activateControls();
-                System.out.println("Controls activated");
+                if (!isSpectator()) {
+                    activateControls();
+                    System.out.println("Controls activated");
+                }
 
                 while (roundsPlayed < ROUNDSTOTAL) {
                     System.out.println("Start round " + roundsPlayed);
                     initializeDataFields();
                     receiveGameInfo();
-
-                    try {
-                        Thread.sleep(2000); // Sleep for a few seconds to make sure the initializeDataFields method doesn't run while the last call to the draw method is running
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
                 }
+
+                if (udpSnapshotReceiver != null)
+                    udpSnapshotReceiver.close();
             } catch (Exception ex) {
                 ex.printStackTrace();
                 circleConnected.setFill(Color.RED);
@@ -259,8 +300,16 @@ public class GameClient extends Application {
         }
 
         private void initializeStreams() throws IOException {
-            dataOutputStreamGame = new DataOutputStream(socketGame.getOutputStream());
-            dataInputStreamGame = new DataInputStream(socketGame.getInputStream());
+            dataOutputStreamGame = new DataOutputStream(new BufferedOutputStream(outputStream)); // A batch of inputs is sent with a single write when flushed
+            dataInputStreamGame = new DataInputStream(new BufferedInputStream(inputStream)); // Snapshots are read a few bytes at a time, so read them from a buffer
+            inputSender = new InputSender(dataOutputStreamGame);
+        }
+
+        /**
+         * This method returns whether the view watches a match instead of playing in it. The server gives spectators the ID -1
+         */
+        private boolean isSpectator() {
+            return playerId == -1;
         }
 
         private void receiveId() throws IOException {
@@ -284,6 +333,10 @@ public class GameClient extends Application {
                     drawSidebar();
                     System.out.println("Player " + readyPlayerId + " ready");
                 } else if (command == 2) { // 2 = all players ready
+                    tickRate = dataInputStreamGame.readShort();
+                    int udpToken = dataInputStreamGame.readInt(); // 0 if the snapshots are sent on this connection
+                    if (udpToken != 0)
+                        udpSnapshotReceiver = new UdpSnapshotReceiver(socketGame.getInetAddress(), udpPort, udpToken);
                     break;
                 }
             }
@@ -297,18 +350,13 @@ public class GameClient extends Application {
             xCoordinates = new double[numberOfPlayers];
             yCoordinates = new double[numberOfPlayers];
 
-            circles = new Circle[numberOfPlayers];
-            polylines = new Polyline[numberOfPlayers];
-
-            for (int i = 0; i < numberOfPlayers; i++) {
-                circles[i] = new Circle(RADIUS, Color.YELLOW);
-                Polyline polyline = new Polyline();
-                polyline.setStroke(colors[i]);
-//                polyline.setStroke(new Color(Math.random(), Math.random(), Math.random(), 1));
-//                polyline.setStroke(new Color(0.2 * (i + 1) % 1, 0.3 * (i + 1) % 1, 0.4 * (i + 1) % 1, 1));
-                polyline.setStrokeWidth(5);
-                polylines[i] = polyline;
-            }
+            snapshotDecoder = new SnapshotCodec.Decoder(numberOfPlayers);
+            predictor = isSpectator() ? null : new Predictor(playerId);
+            gameRenderer.startRound(numberOfPlayers, tickRate, predictor);
+            if (predictor != null)
+                inputSender.startRound(predictor);
+            if (udpSnapshotReceiver != null)
+                udpSnapshotReceiver.startRound(roundsPlayed);
 
             keydownLeft = false;
             keydownRight = false;
@@ -316,11 +364,21 @@ public class GameClient extends Application {
 
         private void receiveGameInfo() throws IOException {
             while (true) {
+                DataInput snapshot = udpSnapshotReceiver != null ? udpSnapshotReceiver.receive() : dataInputStreamGame;
+                if (snapshot == null) // The next round has started, and the end of this one was lost. Go on without counting the score
+                    break;
+
+                snapshotDecoder.decode(snapshot);
+                if (predictor != null) {
+                    predictor.reconcile(snapshotDecoder.getTick() & 0xFFFF, snapshotDecoder.getX(playerId), snapshotDecoder.getY(playerId), snapshotDecoder.getAngle(playerId), snapshotDecoder.isDead(playerId)); // Correct the prediction with the state on the server
+                    inputSender.snapshotReceived(); // The round has started on the server, so a direction chosen before can be sent
+                }
+
                 for (int i = 0; i < numberOfPlayers; i++) {
                     if (!deadPlayers[i]) { // Data is only received for non-dead players
-                        deadPlayers[i] = dataInputStreamGame.readBoolean(); // Update dead/alive status of player i
-                        xCoordinates[i] = dataInputStreamGame.readDouble(); // Update x coordinate of player i
-                        yCoordinates[i] = dataInputStreamGame.readDouble(); // Update y coordinate of player i
+                        deadPlayers[i] = snapshotDecoder.isDead(i); // Update dead/alive status of player i
+                        xCoordinates[i] = snapshotDecoder.getX(i); // Update x coordinate of player i
+                        yCoordinates[i] = snapshotDecoder.getY(i); // Update y coordinate of player i
 
                         if (deadPlayers[i]) { // If player i is dead, update the side bar
                             drawSidebar();
@@ -337,7 +395,7 @@ public class GameClient extends Application {
                     break;
             }
 
-            System.out.println("Round " + roundsPlayed++ + " over");
+            System.out.println("Round " + roundsPlayed++ + " over" + (udpSnapshotReceiver != null ? ". Late UDP snapshots thrown away: " + udpSnapshotReceiver.getDiscarded() : ""));
         }
 
         private boolean isGameOver() {
@@ -369,13 +427,11 @@ public class GameClient extends Application {
                 try {
                     if (!deadPlayers[playerId]) // Only take inputs as long as the player is alive
                         if (event.getCode() == KeyCode.LEFT) { // If the player presses the left arrow key
-                            dataOutputStreamGame.writeByte(-1); // Signal the game engine that the player wishes to change the angle he is traveling negatively
-                            dataOutputStreamGame.flush();
+                            sendInput((byte) -1); // Signal the game engine that the player wishes to change the angle he is traveling negatively
                             keydownLeft = true;
                             keydownRight = false;
                         } else if (event.getCode() == KeyCode.RIGHT) { // If the player presses the right arrow key
-                            dataOutputStreamGame.writeByte(1); // Signal the game engine that the player wishes to change the angle he is traveling positively
-                            dataOutputStreamGame.flush();
+                            sendInput((byte) 1); // Signal the game engine that the player wishes to change the angle he is traveling positively
                             keydownRight = true;
                             keydownLeft = false;
                         }
@@ -394,8 +450,7 @@ public class GameClient extends Application {
 
                 if (!keydownLeft && !keydownRight && !deadPlayers[playerId]) // This if statement prevent the controls from becoming unresponsive when direction is changed in quick succession
                     try {
-                        dataOutputStreamGame.writeByte(0); // Signal the game engine that the player wishes to maintain the angle he is moving
-                        dataOutputStreamGame.flush();
+                        sendInput((byte) 0); // Signal the game engine that the player wishes to maintain the angle he is moving
                     } catch (Exception e) {
                         e.printStackTrace();
                         circleConnected.setFill(Color.RED);
@@ -405,21 +460,15 @@ public class GameClient extends Application {
             pane.setOnMouseClicked(event -> pane.requestFocus()); // Clicking on the pane makes the pane gain focus, which is required for the controls to work
         }
 
-        private void drawGame() {
-            for (int i = 0; i < numberOfPlayers; i++) {
-                polylines[i].getPoints().add(xCoordinates[i]);
-                polylines[i].getPoints().add(yCoordinates[i]);
-
-                circles[i].setCenterX(xCoordinates[i]);
-                circles[i].setCenterY(yCoordinates[i]);
-            }
+        /**
+         * This method sends a change of direction to the server, see InputSender
+         */
+        private void sendInput(byte direction) throws IOException {
+            inputSender.setDirection(direction);
+        }
 
-            Platform.runLater(() -> {
-                pane.getChildren().clear();
-                for (int i = 0; i < numberOfPlayers; i++) {
-                    pane.getChildren().addAll(polylines[i], circles[i]);
-                }
-            });
+        private void drawGame() {
+            gameRenderer.update(snapshotDecoder.getTick() & 0xFFFF, deadPlayers, xCoordinates, yCoordinates); // The renderer draws on the FX thread
         }
 
         private Pane getPane() {
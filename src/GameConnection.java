@@ -0,0 +1,39 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A connection to a player on the game port. Implemented by the thread-per-player GameClientHandler, by the connections of the NioTransport and by those of the MuxTransport.
+ * <p>
+ * The messages are: 0 = number of players, 1 = player ready, 2 = all players ready (followed by the tick rate as a short and the UDP token as an int),
+ * followed by a snapshot every tick. If the UDP token isn't 0, the snapshots are sent as UDP datagrams instead, see UdpTransport.
+ */
+public interface GameConnection {
+    /**
+     * This method is called when the player has been added to a match. It must send the ID, which is the index of the player in the match, to the player
+     */
+    void joinMatch(Match match, byte playerId);
+
+    void sendNumberOfPlayers(byte numberOfPlayers);
+
+    void sendPlayerReady(byte playerId);
+
+    /**
+     * This method tells the player that the game starts. The tick rate lets the client know when every snapshot should be shown
+     */
+    void sendAllReady(int tickRate);
+
+    /**
+     * This method sends a snapshot encoded by the GameEngine. The full snapshot is of the same tick, and is sent instead if the connection has dropped a snapshot.
+     * The snapshots must not be modified, and they are only valid during the call
+     */
+    void sendGameInfo(ByteBuffer snapshot, ByteBuffer fullSnapshot);
+
+    /**
+     * This method returns the backpressure of the connection, i.e. how full its outbound queue is
+     */
+    Backpressure getBackpressure();
+
+    /**
+     * This method is called after the last snapshot of a round has been sent
+     */
+    void sendRoundOver();
+}
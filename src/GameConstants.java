@@ -3,5 +3,8 @@ public interface GameConstants {
     int WIDTH = 1000; // Width of the pane. Used for checking whether a player hit a side
     int HEIGHT = 700; // Height of the pane. Used for checking whether a player hit a side
     byte ROUNDSTOTAL = 5; // Total number of rounds to be played
+    byte MAXPLAYERS = 7; // Maximum number of players in a match. The client has a color for each of them
     int RADIUS = 5; // The radius of the circle that makes up the front of the line the player controls
+    int STROKE_WIDTH = 5; // The width of the line trailing the player
+    double SPEED = 3; // The number of pixels the line moves per calculation
 }
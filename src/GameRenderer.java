@@ -0,0 +1,15 @@
+/**
+ * Draws the game on the client. The GameView calls the methods from its network thread, so an implementation must move the drawing itself to the FX thread
+ */
+public interface GameRenderer {
+    /**
+     * This method is called before the first snapshot of a round. What was drawn in the last round is removed when the first snapshot is drawn.
+     * The head of the local player is drawn where the predictor says it is. The predictor is null for a spectator, who has no player of his own
+     */
+    void startRound(byte numberOfPlayers, int tickRate, Predictor predictor);
+
+    /**
+     * This method is called for every snapshot with its tick as sent by the server. The arrays are reused by the caller, so they must be copied if they are needed after the call
+     */
+    void update(int tick, boolean[] deadPlayers, double[] xCoordinates, double[] yCoordinates);
+}
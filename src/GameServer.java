@@ -1,307 +1,274 @@
-import javafx.scene.shape.Polyline;
-
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class GameServer {
-    private int portGame = 8000, portChat = 9000;
-    private ArrayList<GameClientHandler> listOfGameClientHandlers = new ArrayList<>();
-    private ArrayList<ChatClientHandler> listOfChatClientHandlers = new ArrayList<>();
-    private byte numberOfPlayers;
-    private boolean allReady;
-    private byte[] directions;
-    private boolean[] deadPlayers, readyPlayers;
-    private double[] xCoordinates, yCoordinates;
+    private int portGame, portChat, portSpectator, portMux;
+    private ArrayList<Match> listOfMatches = new ArrayList<>();
+    private Match openMatch; // The match new players join
+    private int numberOfMatches;
+    private ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors()); // Runs the ticks of all matches
+    private ExecutorService virtualThreadExecutor; // Runs the client handlers when they use virtual threads
+    private ServerOptions options;
+    private UdpTransport udpTransport; // Sends the snapshots when they are sent as UDP datagrams, otherwise null
+    private TickStatistics tickStatistics; // The tick times of all matches together. Each match also has its own, which it dumps every round
+    private Metrics metrics = new Metrics();
 
     public static void main(String[] args) {
-        new GameServer();
+        new GameServer(new ServerOptions(args)).start();
     }
 
-    public GameServer() {
-        // This thread stops the program from ever finishing
-        new Thread(() -> {
-            try {
-                ServerSocket serverSocketGame = new ServerSocket(portGame); // Create a server socket
-                System.out.println("Game server started at " + new Date());
-
-                ServerSocket serverSocketChat = new ServerSocket(portChat);
-                System.out.println("Chat server started at " + new Date());
-
-                while (true) {
-                    Socket socketGame = serverSocketGame.accept(); // Listen for a new connection request
-                    System.out.println("Player " + numberOfPlayers + " joined game server. Connection from " + socketGame + " at " + new Date());
-
-                    Socket socketChat = serverSocketChat.accept();
-                    System.out.println("Player " + numberOfPlayers + " joined chat server. Connection from " + socketChat + " at " + new Date());
+    public GameServer(ServerOptions options) {
+        this(options, null);
+    }
 
-                    // Create and start a new thread for the game client
-                    GameClientHandler gameClientHandler = new GameClientHandler(socketGame, numberOfPlayers++); // Postfix increment numberOfPlayers
-                    initializeArrays(); // Since we can't know how many players will join the game, this must be done every time a player joins
+    /**
+     * The tick times of all matches are also recorded in the given statistics, unless it is null. A LoadDriver reports them that way, without resetting the ones shown in the metrics
+     */
+    public GameServer(ServerOptions options, TickStatistics reportStatistics) {
+        this.options = options;
+        portGame = options.getGamePort();
+        portChat = options.getChatPort();
+        portSpectator = options.getSpectatorPort();
+        portMux = options.getMuxPort();
+        tickStatistics = new TickStatistics(options.getTickPeriod(), reportStatistics);
+
+        if (options.useVirtualThreads())
+            virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor(); // A virtual thread per handler. The blocking reads park the virtual thread instead of a platform thread
+    }
 
-                    listOfGameClientHandlers.add(gameClientHandler);
-                    new Thread(gameClientHandler).start();
+    /**
+     * This method opens the ports and starts the threads that serve them. It is called after the constructor, so the threads never see a server that isn't fully constructed
+     */
+    public void start() {
+        startMetrics();
 
-                    ChatClientHandler chatClientHandler = new ChatClientHandler(socketChat);
-                    listOfChatClientHandlers.add(chatClientHandler);
-                    new Thread(chatClientHandler).start();
-                }
+        if (options.useUdpSnapshots()) {
+            try {
+                udpTransport = new UdpTransport(portGame, options, scheduler);
+                new Thread(udpTransport).start();
             } catch (IOException e) {
-                e.printStackTrace();
+                throw new UncheckedIOException(e); // The server can't run as asked without the UDP port
             }
-        }).start();
+        }
 
-        while (true) {
-            if (allReady) { // Check whether the players are ready
-                new GameEngine(); // Create a new GameEngine object
-                break;
-            }
+        new Thread(new SpectatorHub(this, portSpectator)).start(); // All spectators are served by a single thread, whichever the transport
 
+        if (options.useMux())
+            new Thread(new MuxTransport(this, portMux)).start(); // Players who send the game and the chat over one connection, whichever the transport of the others
+
+        // This thread stops the program from ever finishing
+        if (options.getTransport() == ServerOptions.Transport.NIO)
+            new Thread(new NioTransport(this, portGame, portChat)).start(); // All connections are served by a single thread
+        else
+            new Thread(this::acceptConnections).start(); // Every connection gets its own thread
+    }
+
+    private void startMetrics() {
+        tickStatistics.register(metrics);
+        metrics.gauge("matches_running", this::getNumberOfRunningMatches);
+        metrics.counter("connections_game");
+        metrics.counter("connections_chat");
+        metrics.counter("connections_spectator");
+        metrics.rate("chat_messages");
+        metrics.counter("chat_messages_limited");
+        metrics.counter("chat_batches");
+        metrics.gauge("log_dropped", AsyncLogger::getDropped);
+        metrics.startRates(scheduler);
+        metrics.registerMBean("GameServer:type=Metrics");
+
+        if (options.getMetricsPort() != 0) {
             try {
-                Thread.sleep(3000); // Sleep the loop. No need to check constantly
-            } catch (Exception e) {
-                e.printStackTrace();
+                metrics.startHttpServer(options.getMetricsPort());
+            } catch (IOException e) {
+                AsyncLogger.log("Metrics endpoint failed to start", e); // The game can run without the endpoint, and JMX still has the metrics
             }
         }
-
-        System.out.println("End main");
     }
 
-    private void initializeArrays() {
-        readyPlayers = new boolean[numberOfPlayers];
-        directions = new byte[numberOfPlayers];
-        deadPlayers = new boolean[numberOfPlayers];
-        xCoordinates = new double[numberOfPlayers];
-        yCoordinates = new double[numberOfPlayers];
-    }
+    private void acceptConnections() {
+        try {
+            ServerSocket serverSocketGame = new ServerSocket(portGame); // Create a server socket
+            AsyncLogger.log("Game server started at " + new Date());
 
-    class GameEngine implements GameConstants {
-        private final double SPEED = 3; // The number of pixels the line moves per calculation
-        private int[] angles = new int[numberOfPlayers];
-        private Polyline[] polylines = new Polyline[numberOfPlayers];
-        private byte roundsPlayed;
+            ServerSocket serverSocketChat = new ServerSocket(portChat);
+            AsyncLogger.log("Chat server started at " + new Date());
 
-        public GameEngine() {
-            while (roundsPlayed < ROUNDSTOTAL) {
-                setStartingPoints();
-                System.out.println("Start round " + roundsPlayed);
-                startGameEngine();
-                resetDataFields();
+            while (true) {
+                Socket socketGame = serverSocketGame.accept(); // Listen for a new connection request
+                Socket socketChat = serverSocketChat.accept();
 
                 try {
-                    Thread.sleep(5000); // Time between rounds
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    // Create and start a new thread for the game client
+                    GameClientHandler gameClientHandler = new GameClientHandler(socketGame);
+                    Match match = addPlayer(gameClientHandler);
+                    match.log("Player " + gameClientHandler.playerId + " joined game server. Connection from " + socketGame + " at " + new Date());
+                    match.log("Player " + gameClientHandler.playerId + " joined chat server. Connection from " + socketChat + " at " + new Date());
+                    startThread(gameClientHandler);
+                    startThread(gameClientHandler.outboundQueue); // The writer of the connection
+
+                    ChatClientHandler chatClientHandler = new ChatClientHandler(socketChat, match);
+                    match.addChatConnection(chatClientHandler);
+                    startThread(chatClientHandler);
+                    startThread(chatClientHandler.outboundQueue);
+                } catch (IOException e) {
+                    AsyncLogger.log("Accepting a player failed", e); // Only this player is affected, so keep accepting
                 }
             }
-
-            System.out.println("Game over");
+        } catch (IOException e) {
+            AsyncLogger.log("Game server stopped", e);
         }
+    }
 
-        private void resetDataFields() {
-            directions = new byte[numberOfPlayers];
-            deadPlayers = new boolean[numberOfPlayers];
-            xCoordinates = new double[numberOfPlayers];
-            yCoordinates = new double[numberOfPlayers];
-
-            for (GameClientHandler gameClientHandler : listOfGameClientHandlers)
-                gameClientHandler.initializeArray();
+    /**
+     * This method returns the match a new spectator watches: the newest match whose game has started and isn't over, or else the open match.
+     * If no player has joined yet, a match is opened, so the spectator watches the first game
+     */
+    synchronized Match getMatchToWatch() {
+        for (int i = listOfMatches.size() - 1; i >= 0; i--) {
+            Match match = listOfMatches.get(i);
+            if (match.isStarted() && !match.isOver())
+                return match;
         }
 
-        private void setStartingPoints() {
-            for (int i = 0; i < numberOfPlayers; i++) {
-                xCoordinates[i] = (int) (100 + (Math.random() * (WIDTH - 200))); // Pick a random starting x coordinate, but make sure the player can turn if he is facing a side
-                yCoordinates[i] = (int) (100 + (Math.random() * (HEIGHT - 200))); // Pick a random starting y coordinate, but make sure the player can turn if he is facing a side
-                angles[i] = (int) (Math.random() * 361); // Pick a random starting angle
-                Polyline polyline = new Polyline();
-                polyline.setStrokeWidth(5); // Stroke width must be set to ensure the contains method works properly
-                polylines[i] = polyline; // Initialize the polylines
-            }
-        }
-
-        private void startGameEngine() {
-            while (true) {
-                // Add previous coordinates to polylines, which trace after the player
-                for (int i = 0; i < numberOfPlayers; i++) {
-                    if (!deadPlayers[i]) {
-                        polylines[i].getPoints().add(xCoordinates[i]);
-                        polylines[i].getPoints().add(yCoordinates[i]);
-                    }
-                }
+        if (openMatch == null || !openMatch.isOpen())
+            openMatch();
+        return openMatch;
+    }
 
-                // Calculate new coordinates for all players
-                for (int i = 0; i < numberOfPlayers; i++) {
-                    if (!deadPlayers[i]) {
-                        byte angleChangeInDegrees = 6;
-                        angles[i] += angleChangeInDegrees * directions[i]; // Add the change in degrees to the angle
+    ServerOptions getOptions() {
+        return options;
+    }
 
-                        xCoordinates[i] += Math.cos(angles[i] * Math.PI / 180) * SPEED; // Calculate new x coordinate based on the change in angle and speed
-                        yCoordinates[i] += Math.sin(angles[i] * Math.PI / 180) * SPEED; // Calculate new y coordinate based on the change in angle and speed
-                    }
-                }
+    /**
+     * This method returns the number of matches whose game isn't over, including the open match
+     */
+    private synchronized long getNumberOfRunningMatches() {
+        long running = 0;
+        for (Match match : listOfMatches)
+            if (!match.isOver())
+                running++;
+        return running;
+    }
 
-                // Check if any player is dead
-                checkForDeadPlayer();
+    /**
+     * This method returns a new UDP endpoint for a game connection, or null if the snapshots are sent on the game connection
+     */
+    UdpTransport.Endpoint openUdpEndpoint() {
+        return udpTransport != null ? udpTransport.openEndpoint() : null;
+    }
 
-                // Send new coordinates & dead/alive status to all players
-                for (GameClientHandler client : listOfGameClientHandlers)
-                    client.sendGameInfo();
+    private void startThread(Runnable handler) {
+        if (virtualThreadExecutor != null)
+            virtualThreadExecutor.execute(handler);
+        else
+            new Thread(handler).start();
+    }
 
-                // Check if the game is over
-                byte numberOfPlayersAlive = getNumberOfPlayersAlive();
-                if (numberOfPlayers > 1 && (numberOfPlayersAlive == 1 || numberOfPlayersAlive == 0)) // If 1 player is alive, someone has one. If 0 players are alive, it's a draw
-                    break;
-                else if (numberOfPlayers == 1 && numberOfPlayersAlive == 0) // If 1 player is playing, don't end the game until he dies
-                    break;
+    /**
+     * This method adds a player to the open match and returns the match. A new match is opened if the open match is full or its game has started
+     */
+    synchronized Match addPlayer(GameConnection gameConnection) {
+        listOfMatches.removeIf(Match::isOver);
 
-                // Pause the thread for a short while. This determines how often game info is calculated and sent
-                try {
-                    Thread.sleep(25);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+        while (true) {
+            if (openMatch != null && openMatch.addPlayer(gameConnection) != -1)
+                return openMatch;
 
-            System.out.println("Round " + roundsPlayed++ + " over");
+            openMatch();
         }
+    }
 
-        private void checkForDeadPlayer() {
-            for (int i = 0; i < numberOfPlayers; i++) {
-                if (!deadPlayers[i]) { // Only check if the player isn't already dead
-                    if (xCoordinates[i] < RADIUS || xCoordinates[i] > WIDTH - RADIUS) {
-                        System.out.println("Player " + i + " hit the right or left side");
-                        deadPlayers[i] = true;
-                    } else if (yCoordinates[i] < RADIUS || yCoordinates[i] > HEIGHT - RADIUS) {
-                        System.out.println("Player " + i + " hit the top or the bottom side");
-                        deadPlayers[i] = true;
-                    } else
-                        for (int j = 0; j < numberOfPlayers; j++)
-                            if (polylines[j].contains(xCoordinates[i], yCoordinates[i])) {
-                                System.out.println("Player " + i + " collided with the line of player " + j);
-                                deadPlayers[i] = true;
-                            }
-                }
-            }
-        }
+    private void openMatch() {
+        openMatch = new Match(numberOfMatches++, options, scheduler, tickStatistics, metrics);
+        listOfMatches.add(openMatch);
+        AsyncLogger.log("Match " + openMatch.getMatchId() + " opened. " + listOfMatches.size() + " matches running");
+    }
 
-        // I guess this method can be replaced by a simple variable
-        private byte getNumberOfPlayersAlive() {
-            byte counter = 0;
-            for (int i = 0; i < numberOfPlayers; i++) {
-                if (!deadPlayers[i])
-                    counter++;
-            }
-            return counter;
-        }
+    /**
+     * This method returns the match the last player joined. A chat connection belongs to the player who connected to the game port right before it
+     */
+    synchronized Match getLastJoinedMatch() {
+        return openMatch;
     }
 
-    class GameClientHandler implements Runnable {
+    class GameClientHandler implements Runnable, GameConnection {
         private Socket socketGame; // A connected socket
-        private DataOutputStream dataOutputStream;
         private DataInputStream dataInputStream;
+        private OutboundQueue outboundQueue; // Messages are sent from the threads of all players and from the engine. They are queued, so none of them waits for this socket
+        private UdpTransport.Endpoint udpEndpoint = openUdpEndpoint(); // Where the snapshots are sent if they are sent as UDP datagrams
+        private Match match;
         private byte playerId;
-        private boolean[] notifiedDeadPlayer;
 
-        public GameClientHandler(Socket socketGame, byte playerId) {
+        public GameClientHandler(Socket socketGame) throws IOException {
             this.socketGame = socketGame;
+            initializeStreams(); // The streams are needed as soon as the handler joins a match, which is before its thread starts
+        }
+
+        @Override
+        public void joinMatch(Match match, byte playerId) {
+            this.match = match;
             this.playerId = playerId;
+            outboundQueue.send(playerId); // Send player ID
         }
 
         public void run() {
             try {
-                initializeStreams();
                 sendPlayerInfo();
-                receiveDirection();
+                receiveInputs();
             } catch (IOException ex) {
-                ex.printStackTrace();
+                outboundQueue.close(ex.toString()); // The player has disconnected, or the socket was closed because he was too slow
             }
+            match.removePlayer(playerId, this);
+            if (udpEndpoint != null)
+                udpEndpoint.close();
         }
 
         private void initializeStreams() throws IOException {
-            dataOutputStream = new DataOutputStream(socketGame.getOutputStream());
-            dataInputStream = new DataInputStream(socketGame.getInputStream());
+            socketGame.setTcpNoDelay(true); // Every message is flushed as soon as it is complete, so there's no reason to wait for more data
+            DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(socketGame.getOutputStream())); // Messages are buffered and written with a single write when flushed
+            outboundQueue = new OutboundQueue(socketGame, dataOutputStream, options);
+            dataInputStream = new DataInputStream(new BufferedInputStream(socketGame.getInputStream()));
         }
 
         private void sendPlayerInfo() throws IOException {
-            // Send player ID
-            dataOutputStream.writeByte(playerId);
-            System.out.println("Player " + playerId + " waiting for ready");
+            match.log("Player " + playerId + " waiting for ready");
 
             // Send number of players
-            for (GameClientHandler gameClientHandler : listOfGameClientHandlers)
-                gameClientHandler.sendNumberOfPlayers();
+            match.sendNumberOfPlayers();
 
             // Wait for player to signal he is ready
-            boolean ready = dataInputStream.readBoolean();
-            readyPlayers[playerId] = ready; // Just writing "readyPlayers[playerId] = dataInputStream.readBoolean();" doesn't work and I have no idea why.
-            System.out.println("Player " + playerId + " ready");
-
-            // Tell all players that this player is ready
-            for (GameClientHandler gameClientHandler : listOfGameClientHandlers)
-                gameClientHandler.sendPlayerReady(playerId);
-
-            // Check if all players are ready
-            checkAllReady();
+            match.setPlayerReady(playerId, dataInputStream.readBoolean());
         }
 
-        private void receiveDirection() throws IOException {
+        private void receiveInputs() throws IOException {
             while (true) {
-                byte direction = dataInputStream.readByte();
-                directions[playerId] = direction; // Just writing "directions[playerId] = dataInputStream.readByte();" doesn't work properly for some reason
-            }
-        }
-
-        private void checkAllReady() {
-            boolean allReadyLocal = true;
-
-            for (int i = 0; i < numberOfPlayers; i++) {
-                if (!readyPlayers[i]) {
-                    allReadyLocal = false;
-                    break;
-                }
-            }
-
-            if (allReadyLocal) {
-                for (GameClientHandler gameClientHandler : listOfGameClientHandlers) {
-                    gameClientHandler.sendAllReady();
-                    gameClientHandler.initializeArray();
-                }
-
-                allReady = true;
-                System.out.println("All players ready");
+                int count = InputMessage.checkCount(dataInputStream.readUnsignedByte()); // A batch of inputs, see InputMessage
+                for (int i = 0; i < count; i++)
+                    match.addInput(playerId, InputMessage.read(dataInputStream));
             }
         }
 
-        private void initializeArray() {
-            notifiedDeadPlayer = new boolean[numberOfPlayers]; // Can't initialize this variable until the total number of players is known
+        @Override
+        public void sendPlayerReady(byte playerId) {
+            outboundQueue.send((byte) 1, playerId);
         }
 
-        private void sendPlayerReady(byte playerId) {
-            try {
-                dataOutputStream.writeByte(1);
-                dataOutputStream.writeByte(playerId);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-        private void sendAllReady() {
-            try {
-                dataOutputStream.writeByte(2);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        @Override
+        public void sendAllReady(int tickRate) {
+            int token = udpEndpoint != null ? udpEndpoint.getToken() : 0;
+            outboundQueue.send((byte) 2, (byte) (tickRate >> 8), (byte) tickRate, (byte) (token >> 24), (byte) (token >> 16), (byte) (token >> 8), (byte) token);
         }
 
-        private void sendNumberOfPlayers() {
-            try {
-                dataOutputStream.writeByte(0);
-                dataOutputStream.writeByte(numberOfPlayers);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        @Override
+        public void sendNumberOfPlayers(byte numberOfPlayers) {
+            outboundQueue.send((byte) 0, numberOfPlayers);
         }
 
         /**
@@ -309,66 +276,71 @@ public class GameServer {
          * 1) Info about the alive/dead status of every player
          * 2) The coordinates of every player
          * <p>
-         * If a player dies, the alive/dead status and coordinates of this player is sent one more time and then not anymore.
+         * If a player dies, the coordinates of this player are sent one more time and then not anymore. See SnapshotCodec for the format.
+         * <p>
+         * The snapshot is encoded once by the GameEngine and queued for every player, so the engine never waits for a socket.
+         * When the snapshots are sent as UDP datagrams, the full snapshot is sent, since datagrams can be lost.
          */
-        private void sendGameInfo() {
-            try {
-                for (byte i = 0; i < numberOfPlayers; i++) {
-                    if (!notifiedDeadPlayer[i]) { // Only send death status and coordinates if players have not been notified that a player is dead
-                        dataOutputStream.writeBoolean(deadPlayers[i]); // Notify the player whether he is dead
-                        dataOutputStream.writeDouble(xCoordinates[i]); // Send new x coordinate
-                        dataOutputStream.writeDouble(yCoordinates[i]); // Send new y coordinate
-
-                        if (deadPlayers[i])
-                            notifiedDeadPlayer[i] = true; // If the player is dead, he has been notified of this and we can stop sending
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        @Override
+        public void sendGameInfo(ByteBuffer snapshot, ByteBuffer fullSnapshot) {
+            if (udpEndpoint != null)
+                outboundQueue.getBackpressure().sent(udpEndpoint.send(fullSnapshot));
+            else
+                outboundQueue.sendSnapshot(snapshot, fullSnapshot);
+        }
+
+        @Override
+        public void sendRoundOver() {
+            if (udpEndpoint != null)
+                udpEndpoint.endRound();
+        }
+
+        @Override
+        public Backpressure getBackpressure() {
+            return outboundQueue.getBackpressure();
         }
     }
 
-    class ChatClientHandler implements Runnable {
+    class ChatClientHandler implements Runnable, ChatConnection {
         private Socket socket; // A connected socket
-        private DataOutputStream dataOutputStream;
+        private OutboundQueue outboundQueue; // Chat messages are sent by the ChatDispatcher of the match
+        private TokenBucket chatLimit = options.newChatLimit(); // How many chat messages the player may send
+        private Match match;
         private DataInputStream dataInputStream;
 
-        public ChatClientHandler(Socket socket) {
+        public ChatClientHandler(Socket socket, Match match) throws IOException {
             this.socket = socket;
+            this.match = match;
             initializeStreams();
         }
 
-        private void initializeStreams() {
-            try {
-                dataOutputStream = new DataOutputStream(socket.getOutputStream());
-                dataInputStream = new DataInputStream(socket.getInputStream());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        private void initializeStreams() throws IOException {
+            outboundQueue = new OutboundQueue(socket, socket.getOutputStream(), options); // Every chat message is written with a single write, so no buffering is needed
+            dataInputStream = new DataInputStream(socket.getInputStream());
         }
 
         public void run() {
-            while (true) {
-                try {
-                    // Get a chat message
-                    String chatMessage = dataInputStream.readUTF();
-
-                    // Send chat message to all clients
-                    for (ChatClientHandler chatClientHandler : listOfChatClientHandlers)
-                        chatClientHandler.receiveChatMessage(chatMessage);
-                } catch (Exception e) {
-                    e.printStackTrace();
+            try {
+                while (true) {
+                    // Get a chat message. It is read as the frame written by writeUTF, so it can be sent on without decoding it
+                    int length = dataInputStream.readUnsignedShort();
+                    byte[] chatMessage = new byte[2 + length];
+                    chatMessage[0] = (byte) (length >> 8);
+                    chatMessage[1] = (byte) length;
+                    dataInputStream.readFully(chatMessage, 2, length);
+
+                    // Send chat message to all clients in the match
+                    match.sendChatMessage(ByteBuffer.wrap(chatMessage), chatLimit);
                 }
+            } catch (IOException e) {
+                outboundQueue.close(e.toString()); // The player has disconnected. Reading again would just throw again
             }
+            match.removeChatConnection(this);
         }
 
-        public void receiveChatMessage(String text) {
-            try {
-                dataOutputStream.writeUTF(text);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        @Override
+        public void receiveChatMessage(ByteBuffer message) {
+            outboundQueue.send(message);
         }
     }
-}
\ No newline at end of file
+}
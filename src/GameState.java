@@ -0,0 +1,42 @@
+/**
+ * The state of a match after a tick. The Simulation creates a new one every tick and never changes it,
+ * so it can be handed to other threads without locking.
+ */
+public final class GameState {
+    private final int tick; // The number of ticks since the round started
+    private final boolean[] deadPlayers;
+    private final double[] xCoordinates, yCoordinates;
+    private final int[] angles; // In degrees, between 0 and 359
+
+    public GameState(int tick, boolean[] deadPlayers, double[] xCoordinates, double[] yCoordinates, int[] angles) {
+        this.tick = tick;
+        this.deadPlayers = deadPlayers.clone(); // Copy the arrays, since the engine keeps changing its own
+        this.xCoordinates = xCoordinates.clone();
+        this.yCoordinates = yCoordinates.clone();
+        this.angles = angles.clone();
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getNumberOfPlayers() {
+        return deadPlayers.length;
+    }
+
+    public boolean isDead(int player) {
+        return deadPlayers[player];
+    }
+
+    public double getX(int player) {
+        return xCoordinates[player];
+    }
+
+    public double getY(int player) {
+        return yCoordinates[player];
+    }
+
+    public int getAngle(int player) {
+        return angles[player];
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A change of the direction of a player, sent from the client to the server. Every input has a sequence number and the tick it should be applied in.
+ * <p>
+ * After the ready byte, everything the client sends on the game port is a batch of inputs: a byte with the number of inputs, followed by the inputs
+ * (short sequence number, short tick, byte direction). The client sends its last few inputs in every batch, so an input that is lost is still received
+ * with the next batch. The server ignores the inputs it has already received. Sequence numbers and ticks are sent as shorts, so they wrap around.
+ */
+public class InputMessage {
+    public static final int MAX_INPUTS = 8; // The largest number of inputs in a batch
+    public static final int INPUT_SIZE = 5; // Bytes per input
+    public static final InputMessage LEAVE = new InputMessage(0, 0, (byte) 0); // Put in the input queue of a player who has left. Stops the player from turning
+
+    private final int sequence, tick; // Between 0 and 65535, as sent
+    private final byte direction;
+
+    public InputMessage(int sequence, int tick, byte direction) {
+        this.sequence = sequence & 0xFFFF;
+        this.tick = tick & 0xFFFF;
+        this.direction = direction;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public byte getDirection() {
+        return direction;
+    }
+
+    /**
+     * This method returns whether this input was sent after the input with the given sequence number
+     */
+    public boolean isNewerThan(int sequence) {
+        return (short) (this.sequence - sequence) > 0;
+    }
+
+    /**
+     * This method returns the tick of the input, given a tick near it, e.g. the current tick. Needed since the tick sent wraps around
+     */
+    public int getTick(int nearTick) {
+        return nearTick + (short) (tick - nearTick);
+    }
+
+    public static void write(DataOutput out, Collection<InputMessage> inputs) throws IOException {
+        out.writeByte(inputs.size());
+        for (InputMessage input : inputs) {
+            out.writeShort(input.sequence);
+            out.writeShort(input.tick);
+            out.writeByte(input.direction);
+        }
+    }
+
+    /**
+     * This method checks the number of inputs in a batch, as read from the client, and returns it
+     */
+    public static int checkCount(int count) throws IOException {
+        if (count < 1 || count > MAX_INPUTS)
+            throw new IOException("Invalid number of inputs: " + count);
+        return count;
+    }
+
+    public static InputMessage read(DataInput in) throws IOException {
+        return new InputMessage(in.readUnsignedShort(), in.readUnsignedShort(), in.readByte());
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Sends the changes of direction of the local player to the server, see InputMessage. Used by the GameView of the GameClient.
+ * <p>
+ * The client starts a round as soon as the last one is over, but the server starts it after the time between rounds, and throws away the inputs
+ * it gets in between. So a change of direction made before the first snapshot of the round is only remembered, and sent when that snapshot arrives,
+ * with a tick the server hasn't played yet. Sending it right away would make the client predict a turn the server never applies, and since
+ * the same direction isn't sent twice, the player would keep that turn on the client only.
+ * <p>
+ * The methods are called from the network thread and the FX thread, so they are synchronized.
+ */
+public class InputSender {
+    private static final int REPEATS = 4; // Every input is sent this many times, in case one is lost
+
+    private DataOutputStream out;
+    private Predictor predictor; // Gives every input its tick. Replaced every round
+    private ArrayDeque<InputMessage> recentInputs = new ArrayDeque<>(); // The last inputs sent. They are sent again with every new input
+    private int inputSequence; // Not reset between rounds, so the server can tell the inputs of a new round from old ones
+    private byte lastDirection; // The direction sent last. Holding a key down repeats the key press, which doesn't change anything
+    private byte heldDirection; // The direction the player wants, sent when the round has started on the server
+    private boolean roundStarted; // Whether the first snapshot of the round has arrived
+
+    public InputSender(DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * This method is called by the network thread when a round starts on the client, before its first snapshot has arrived
+     */
+    public synchronized void startRound(Predictor predictor) {
+        this.predictor = predictor;
+        lastDirection = 0; // The server starts every round going straight
+        heldDirection = 0;
+        roundStarted = false;
+    }
+
+    /**
+     * This method is called by the network thread for every snapshot, after the predictor has been given it. The first snapshot of a round sends
+     * the direction chosen before it
+     */
+    public synchronized void snapshotReceived() throws IOException {
+        if (roundStarted)
+            return;
+
+        roundStarted = true;
+        send(heldDirection);
+    }
+
+    /**
+     * This method is called by the FX thread when the direction of the keys held down changes
+     */
+    public synchronized void setDirection(byte direction) throws IOException {
+        heldDirection = direction;
+        if (roundStarted)
+            send(direction);
+    }
+
+    // The predictor gives the input the tick it is applied in, and turns the player right away instead of when the server has sent it back
+    private void send(byte direction) throws IOException {
+        if (direction == lastDirection)
+            return;
+        lastDirection = direction;
+
+        int tick = predictor.setDirection(direction);
+        recentInputs.addLast(new InputMessage(inputSequence++, tick, direction));
+        if (recentInputs.size() > REPEATS)
+            recentInputs.removeFirst();
+
+        InputMessage.write(out, recentInputs);
+        out.flush();
+    }
+}
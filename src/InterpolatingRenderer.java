@@ -0,0 +1,176 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The part of a renderer that decides what to show in every frame. The network thread puts the snapshots in a SnapshotRing, and an AnimationTimer
+ * takes them out on the FX thread once every frame, so the frame rate doesn't depend on when the snapshots arrive.
+ * <p>
+ * Every snapshot is shown a playout delay after the time it would arrive if it had no jitter, i.e. as early as the earliest snapshot of the round arrived.
+ * The heads are moved smoothly between the two snapshots around that time, so the game moves smoothly at any frame rate, even if snapshots arrive late or in bursts.
+ * <p>
+ * The head of the local player isn't delayed. It is drawn where the Predictor says it is now, so it reacts to the keys right away. Its trail is drawn from the snapshots
+ * like the others, so it ends a little behind the head.
+ */
+public abstract class InterpolatingRenderer implements GameRenderer, GameConstants {
+    private static final int RING_CAPACITY = 256; // Snapshots received but not shown yet. Must be a power of two
+    private static final long MIN_PLAYOUT_DELAY = 50_000_000; // 50 ms. The playout delay is this or 2 ticks, whichever is longer
+
+    protected Pane pane;
+    protected Color[] colors;
+    private volatile Round round; // The round snapshots are received for. Replaced by the network thread
+    private Round shownRound; // The round being shown. Only used on the FX thread
+
+    public InterpolatingRenderer(Pane pane, Color[] colors) {
+        this.pane = pane;
+        this.colors = colors;
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drawFrame(now);
+            }
+        }.start();
+    }
+
+    /**
+     * This method is called on the FX thread before the first frame of a round. It must remove what was drawn in the last round
+     */
+    protected abstract void showRound(int numberOfPlayers);
+
+    /**
+     * This method is called on the FX thread with the points (x and y after each other) every player has moved through since the last call.
+     * The lists are reused, so they are only valid during the call
+     */
+    protected abstract void drawTrails(List<List<Double>> newPoints);
+
+    /**
+     * This method is called on the FX thread in every frame with where the heads of the players are. The arrays are reused, so they are only valid during the call
+     */
+    protected abstract void drawHeads(double[] xCoordinates, double[] yCoordinates);
+
+    @Override
+    public void startRound(byte numberOfPlayers, int tickRate, Predictor predictor) {
+        round = new Round(numberOfPlayers, tickRate, predictor);
+    }
+
+    @Override
+    public void update(int tick, boolean[] deadPlayers, double[] xCoordinates, double[] yCoordinates) {
+        Round round = this.round;
+        tick = round.lastTick + (short) (tick - round.lastTick); // The tick is sent as a short, so add the difference to the last tick in case it has wrapped around
+        round.lastTick = tick;
+        round.baseTime = Math.min(round.baseTime, System.nanoTime() - tick * round.tickPeriod);
+
+        SnapshotRing.Slot slot;
+        while ((slot = round.ring.claim()) == null)
+            LockSupport.parkNanos(1_000_000); // The FX thread is far behind. Wait for it rather than lose a part of the trails
+
+        slot.tick = tick;
+        System.arraycopy(deadPlayers, 0, slot.deadPlayers, 0, deadPlayers.length);
+        System.arraycopy(xCoordinates, 0, slot.xCoordinates, 0, xCoordinates.length);
+        System.arraycopy(yCoordinates, 0, slot.yCoordinates, 0, yCoordinates.length);
+        round.ring.publish();
+    }
+
+    private void drawFrame(long now) {
+        Round round = this.round;
+        if (round == null)
+            return;
+
+        if (round != shownRound) {
+            if (round.ring.peek() == null)
+                return; // Keep showing the last round, including the label showing who won it, until the new round has a snapshot
+            shownRound = round;
+            showRound(round.numberOfPlayers);
+        }
+
+        double renderTick = (now - round.playoutDelay - round.baseTime) / (double) round.tickPeriod; // The point in the game to show. Usually between two ticks
+
+        // Take out the snapshots that are due, and collect the points they add to the trails
+        boolean newPoints = false;
+        SnapshotRing.Slot slot;
+        while ((slot = round.ring.peek()) != null && slot.tick <= renderTick) {
+            for (int i = 0; i < round.numberOfPlayers; i++) {
+                if (!round.deadPlayers[i]) { // The point where a player died is added, and then no more
+                    round.newPoints.get(i).add(slot.xCoordinates[i]);
+                    round.newPoints.get(i).add(slot.yCoordinates[i]);
+                    round.xCoordinates[i] = slot.xCoordinates[i];
+                    round.yCoordinates[i] = slot.yCoordinates[i];
+                    round.deadPlayers[i] = slot.deadPlayers[i];
+                    newPoints = true;
+                }
+            }
+            round.tick = slot.tick;
+            round.ring.pop();
+        }
+
+        if (round.tick == Integer.MIN_VALUE)
+            return; // No snapshot is due yet
+
+        if (newPoints) {
+            drawTrails(round.newPoints);
+            for (List<Double> points : round.newPoints)
+                points.clear();
+        }
+
+        // Move the heads between the last snapshot shown and the next one. If the next one hasn't arrived, they wait at the last one
+        double fraction = slot == null ? 0 : Math.min(1, (renderTick - round.tick) / (slot.tick - round.tick));
+        for (int i = 0; i < round.numberOfPlayers; i++) {
+            if (slot == null || round.deadPlayers[i]) {
+                round.headX[i] = round.xCoordinates[i];
+                round.headY[i] = round.yCoordinates[i];
+            } else {
+                round.headX[i] = round.xCoordinates[i] + (slot.xCoordinates[i] - round.xCoordinates[i]) * fraction;
+                round.headY[i] = round.yCoordinates[i] + (slot.yCoordinates[i] - round.yCoordinates[i]) * fraction;
+            }
+        }
+        // The head of the local player is where the player is now, not a playout delay ago
+        double presentTick = (now - round.baseTime) / (double) round.tickPeriod;
+        if (round.predictor != null && round.predictor.predict(presentTick)) {
+            round.headX[round.predictor.getPlayerId()] = round.predictor.getX();
+            round.headY[round.predictor.getPlayerId()] = round.predictor.getY();
+        }
+
+        drawHeads(round.headX, round.headY);
+    }
+
+    private static class Round {
+        private int numberOfPlayers;
+        private long tickPeriod, playoutDelay; // In nanoseconds
+        private SnapshotRing ring;
+        private Predictor predictor;
+
+        // Only used on the network thread
+        private int lastTick;
+
+        // Written by the network thread and read by the FX thread
+        private volatile long baseTime = Long.MAX_VALUE; // When tick 0 would have arrived without any jitter, i.e. the earliest arrival of any snapshot minus the time of its tick
+
+        // Only used on the FX thread
+        private int tick = Integer.MIN_VALUE; // The tick of the last snapshot shown, or MIN_VALUE if none has been shown
+        private boolean[] deadPlayers;
+        private double[] xCoordinates, yCoordinates; // The coordinates in the last snapshot shown
+        private double[] headX, headY;
+        private List<List<Double>> newPoints = new ArrayList<>();
+
+        Round(byte numberOfPlayers, int tickRate, Predictor predictor) {
+            this.numberOfPlayers = numberOfPlayers;
+            this.predictor = predictor;
+            tickPeriod = 1_000_000_000L / tickRate;
+            playoutDelay = Math.max(MIN_PLAYOUT_DELAY, 2 * tickPeriod);
+            ring = new SnapshotRing(RING_CAPACITY, numberOfPlayers);
+
+            deadPlayers = new boolean[numberOfPlayers];
+            xCoordinates = new double[numberOfPlayers];
+            yCoordinates = new double[numberOfPlayers];
+            headX = new double[numberOfPlayers];
+            headY = new double[numberOfPlayers];
+            for (int i = 0; i < numberOfPlayers; i++)
+                newPoints.add(new ArrayList<>());
+        }
+    }
+}
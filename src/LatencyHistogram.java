@@ -0,0 +1,89 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with buckets of roughly 12 % width, from 1 microsecond up to about 35 minutes.
+ * <p>
+ * Recording is a single array increment, so it can be done every tick. The histogram can be read and dumped from another thread while it is being recorded to.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3; // Every doubling of the duration is split into 2^3 = 8 buckets
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (32 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        long micros = Math.min(Integer.MAX_VALUE, Math.max(0, nanos / 1000));
+        counts.incrementAndGet(bucket(micros));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * This method returns the duration in microseconds that the given fraction (between 0 and 1) of the recorded durations are shorter than or equal to.
+     * The duration is rounded up to the upper bound of its bucket
+     */
+    public long getPercentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": count=" + getCount() + " p50=" + getPercentile(0.5) + "us p90=" + getPercentile(0.9) + "us p99=" + getPercentile(0.99) + "us max=" + getPercentile(1) + "us";
+    }
+
+    // Durations below 8 us get a bucket each. Above that, the bucket is picked by the highest set bit and the 3 bits below it
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts many Bots against a server and reports how the server keeps up, e.g. "java LoadDriver --bots=2000 --connect-rate=200".
+ * <p>
+ * Options: --bots (how many bots, 1000 by default), --host, --game-port, --chat-port and --mux-port (8000, 9000 and 8002 by default, like the server), --players (the players a bot waits for before it is ready, 7 by default),
+ * --connect-rate (bots started per second, so the server isn't asked to accept thousands of connections at once), --report (seconds between reports)
+ * and --mux (the bots send the game and the chat over one connection to the mux port, which the server opens with --mux=true).
+ * With --local-server a GameServer is started in the same JVM, with the options after "--", e.g. "java LoadDriver --bots=500 --local-server -- --transport=nio".
+ * The local server is given the ports of the driver, and the bots use the ports the server ends up with, so a port may be given either before or after "--".
+ * <p>
+ * Every report has the bytes and snapshots received per second by all bots and the snapshot delay: how much later than its place in the tick schedule
+ * a snapshot arrived, which grows when the server falls behind or the connections queue up. The tick times of the server can only be reported with
+ * --local-server. A remote server prints them to its log every round.
+ * Every bot runs on a virtual thread, so thousands of bots only need a few platform threads.
+ */
+public class LoadDriver {
+    private int bots = 1000;
+    private String host = "localhost";
+    private int gamePort = 8000;
+    private int chatPort = 9000;
+    private int muxPort = 8002; // Only used with --mux
+    private int playersPerMatch = 7;
+    private int connectRate = 200;
+    private int reportInterval = 5; // In seconds
+    private boolean mux;
+    private GameServer gameServer; // The server started by --local-server, otherwise null
+    private TickStatistics serverTickStatistics; // The tick times of all matches of the local server since the last report, otherwise null
+    private Bot.Statistics statistics = new Bot.Statistics();
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadDriver driver = new LoadDriver();
+        boolean localServer = false;
+        List<String> serverArgs = new ArrayList<>();
+        boolean serverOptions = false; // Whether the arguments are those after "--"
+
+        for (int i = 0; i < args.length; i++) {
+            if (serverOptions)
+                serverArgs.add(args[i]);
+            else if (args[i].equals("--"))
+                serverOptions = true;
+            else if (args[i].equals("--local-server"))
+                localServer = true;
+            else if (args[i].equals("--mux"))
+                driver.mux = true;
+            else if (args[i].startsWith("--bots="))
+                driver.bots = Integer.parseInt(args[i].substring("--bots=".length()));
+            else if (args[i].startsWith("--host="))
+                driver.host = args[i].substring("--host=".length());
+            else if (args[i].startsWith("--game-port="))
+                driver.gamePort = Integer.parseInt(args[i].substring("--game-port=".length()));
+            else if (args[i].startsWith("--chat-port="))
+                driver.chatPort = Integer.parseInt(args[i].substring("--chat-port=".length()));
+            else if (args[i].startsWith("--mux-port="))
+                driver.muxPort = Integer.parseInt(args[i].substring("--mux-port=".length()));
+            else if (args[i].startsWith("--players="))
+                driver.playersPerMatch = Integer.parseInt(args[i].substring("--players=".length()));
+            else if (args[i].startsWith("--connect-rate="))
+                driver.connectRate = Integer.parseInt(args[i].substring("--connect-rate=".length()));
+            else if (args[i].startsWith("--report="))
+                driver.reportInterval = Integer.parseInt(args[i].substring("--report=".length()));
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        if (localServer) {
+            serverArgs.addAll(0, List.of("--game-port=" + driver.gamePort, "--chat-port=" + driver.chatPort, "--mux-port=" + driver.muxPort)); // First, so the options after "--" win
+            ServerOptions options = new ServerOptions(serverArgs.toArray(new String[0]));
+            driver.gamePort = options.getGamePort();
+            driver.chatPort = options.getChatPort();
+            driver.muxPort = options.getMuxPort();
+            driver.serverTickStatistics = new TickStatistics(options.getTickPeriod()); // Its own, since a dump resets them
+            driver.gameServer = new GameServer(options, driver.serverTickStatistics);
+            driver.gameServer.start();
+            Thread.sleep(500); // Let the server open its ports
+        }
+        driver.run();
+    }
+
+    private void run() throws InterruptedException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Thread starter = new Thread(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < bots; i++) {
+                long delay = start + i * 1_000_000_000L / connectRate - System.nanoTime();
+                if (delay > 0)
+                    LockSupport.parkNanos(delay);
+                executor.execute(new Bot(i, host, gamePort, chatPort, mux ? muxPort : 0, playersPerMatch, statistics));
+            }
+        }, "Bot starter");
+        starter.start();
+
+        long start = System.nanoTime(), lastReport = start;
+        long lastSnapshots = 0, lastInputs = 0, lastBytes = 0;
+        while (statistics.finished.sum() + statistics.failed.sum() < bots) {
+            Thread.sleep(reportInterval * 1000L);
+
+            long now = System.nanoTime();
+            double seconds = (now - lastReport) / 1e9;
+            long snapshots = statistics.snapshots.sum(), inputs = statistics.inputs.sum(), bytes = statistics.bytes.sum();
+            System.out.printf("%.0f s: %d connected, %d playing, %d finished, %d failed, %d rounds. %.0f snapshots/s, %.0f inputs/s, %.1f kB/s%n",
+                    (now - start) / 1e9, statistics.connected.sum(), statistics.playing.sum(), statistics.finished.sum(), statistics.failed.sum(), statistics.rounds.sum(),
+                    (snapshots - lastSnapshots) / seconds, (inputs - lastInputs) / seconds, (bytes - lastBytes) / seconds / 1000);
+            System.out.println("  " + statistics.snapshotDelay);
+            statistics.snapshotDelay.reset();
+            if (serverTickStatistics != null)
+                serverTickStatistics.dump("Server");
+
+            lastReport = now;
+            lastSnapshots = snapshots;
+            lastInputs = inputs;
+            lastBytes = bytes;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("All bots done in %.0f s: %d finished, %d failed, %d rounds, %d snapshots, %.1f MB received%n",
+                seconds, statistics.finished.sum(), statistics.failed.sum(), statistics.rounds.sum(), statistics.snapshots.sum(), statistics.bytes.sum() / 1e6);
+        executor.shutdown();
+        if (gameServer != null)
+            System.exit(0); // The threads of the server never finish
+    }
+}
@@ -0,0 +1,450 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A room of up to MAXPLAYERS players that play a game together. Every match has its own players, chat and GameEngine.
+ * The GameServer puts new players in the open match, and starts a new one when it is full or its game has started.
+ */
+public class Match implements GameConstants {
+    private int matchId;
+    private ServerOptions options;
+    private ScheduledExecutorService scheduler; // Runs the ticks of the game. Shared by all matches
+    private TickStatistics serverTickStatistics; // The tick times of all matches of the server, or null
+    private Metrics metrics;
+    private LongAdder chatMessages, chatMessagesLimited, gameConnections, chatConnections, spectators; // Counted by the Metrics of the server, for all matches together
+    private ChatDispatcher chatDispatcher;
+    private List<GameConnection> listOfGameConnections = new CopyOnWriteArrayList<>(); // Iterated by many threads on every broadcast, but only changed when someone joins or leaves
+    private List<ChatConnection> listOfChatConnections = new CopyOnWriteArrayList<>();
+    private List<SpectatorHub.Spectator> listOfSpectators = new CopyOnWriteArrayList<>(); // Get everything the players get, but aren't players. Added to under the lobby lock
+    private ReentrantLock lobbyLock = new ReentrantLock(); // Guards joining and readying up. A lock instead of synchronized, since a virtual thread blocking on a socket write inside synchronized would pin its carrier thread
+    private byte numberOfPlayers;
+    private boolean allReady;
+    private volatile boolean over; // Set when the game is over, so the GameServer can forget the match
+    private boolean[] readyPlayers = new boolean[MAXPLAYERS], leftPlayers = new boolean[MAXPLAYERS]; // Guarded by the lobby lock
+    private List<Queue<InputMessage>> inputQueues = new ArrayList<>(); // The inputs received from every player. Added to by the threads of the players and taken out by the engine. Never replaced, so no input is lost
+    private volatile GameState gameState; // The state after the last tick. Published by the engine for other threads to read
+
+    public Match(int matchId, ServerOptions options, ScheduledExecutorService scheduler, TickStatistics serverTickStatistics, Metrics metrics) {
+        this.matchId = matchId;
+        this.options = options;
+        this.scheduler = scheduler;
+        this.serverTickStatistics = serverTickStatistics;
+        this.metrics = metrics;
+        chatMessages = metrics.counter("chat_messages");
+        chatMessagesLimited = metrics.counter("chat_messages_limited");
+        chatDispatcher = new ChatDispatcher(listOfChatConnections, scheduler, metrics.counter("chat_batches")::increment);
+        gameConnections = metrics.counter("connections_game");
+        chatConnections = metrics.counter("connections_chat");
+        spectators = metrics.counter("connections_spectator");
+
+        for (int i = 0; i < MAXPLAYERS; i++)
+            inputQueues.add(new ConcurrentLinkedQueue<>());
+    }
+
+    public int getMatchId() {
+        return matchId;
+    }
+
+    /**
+     * This method adds a player to the match and returns the ID of the player, or -1 if the match is no longer open.
+     * The connection is told its ID before anyone else can send it anything. The caller must then call sendNumberOfPlayers
+     */
+    byte addPlayer(GameConnection gameConnection) {
+        lobbyLock.lock();
+        try {
+            if (!isOpen())
+                return -1;
+
+            byte playerId = numberOfPlayers++; // Postfix increment numberOfPlayers
+            gameConnection.joinMatch(this, playerId);
+            listOfGameConnections.add(gameConnection);
+            gameConnections.increment();
+
+            Backpressure backpressure = gameConnection.getBackpressure(); // Counts everything sent to the player, on the game connection and as datagrams
+            metrics.gauge(metricsPrefix(playerId) + "bytes_sent", backpressure::getBytesSent);
+            metrics.gauge(metricsPrefix(playerId) + "messages_sent", backpressure::getMessagesSent);
+            metrics.gauge(metricsPrefix(playerId) + "queue_depth", backpressure::getDepth); // Bytes waiting to be written. A slow client shows here while the round runs, not only in the log at the end
+            return playerId;
+        } finally {
+            lobbyLock.unlock();
+        }
+    }
+
+    /**
+     * This method tells all players how many players have joined
+     */
+    void sendNumberOfPlayers() {
+        lobbyLock.lock();
+        try {
+            for (GameConnection gameConnection : listOfGameConnections)
+                gameConnection.sendNumberOfPlayers(numberOfPlayers);
+            for (SpectatorHub.Spectator spectator : listOfSpectators)
+                spectator.sendNumberOfPlayers(numberOfPlayers);
+        } finally {
+            lobbyLock.unlock();
+        }
+    }
+
+    /**
+     * This method is called when a player has signaled he is ready. It tells all players and starts the game when everyone is ready
+     */
+    void setPlayerReady(byte playerId, boolean ready) {
+        lobbyLock.lock();
+        try {
+            readyPlayers[playerId] = ready;
+            log("Player " + playerId + " ready");
+
+            // Tell all players that this player is ready
+            for (GameConnection gameConnection : listOfGameConnections)
+                gameConnection.sendPlayerReady(playerId);
+            for (SpectatorHub.Spectator spectator : listOfSpectators)
+                spectator.sendPlayerReady(playerId);
+
+            // Check if all players are ready
+            checkAllReady();
+        } finally {
+            lobbyLock.unlock();
+        }
+    }
+
+    /**
+     * This method is called when the connection to a player is lost. Nothing more is sent to the player. If the game hasn't started, the others
+     * no longer wait for him to be ready. If it has, he keeps going straight until he dies.
+     * <p>
+     * It can be called while holding the lock of the connection, so the lobby is updated on the scheduler. Taking the lobby lock here could deadlock with a broadcast
+     */
+    void removePlayer(byte playerId, GameConnection gameConnection) {
+        if (!listOfGameConnections.remove(gameConnection))
+            return; // Already removed
+        gameConnections.decrement();
+        metrics.remove(metricsPrefix(playerId));
+
+        inputQueues.get(playerId).add(InputMessage.LEAVE);
+        log("Player " + playerId + " left");
+
+        scheduler.execute(() -> {
+            lobbyLock.lock();
+            try {
+                leftPlayers[playerId] = true;
+                checkAllReady(); // The player may have been the only one not ready
+            } finally {
+                lobbyLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * This method is called for every input received from a player, including the ones received before. The engine applies it in the tick it was sent for
+     */
+    void addInput(byte playerId, InputMessage input) {
+        inputQueues.get(playerId).add(input);
+    }
+
+    /**
+     * This method returns the state of the game after the last tick, or null if the game hasn't started. It can be called from any thread
+     */
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    /**
+     * This method lets a spectator watch the match. The spectator is first told what has happened in the lobby, so it gets the same messages as a player who
+     * had been there from the start, except for the snapshots sent before it joined
+     */
+    void addSpectator(SpectatorHub.Spectator spectator) {
+        lobbyLock.lock();
+        try {
+            spectator.joinMatch(this);
+            spectator.sendNumberOfPlayers(numberOfPlayers);
+            for (byte i = 0; i < numberOfPlayers; i++)
+                if (readyPlayers[i])
+                    spectator.sendPlayerReady(i);
+            if (allReady)
+                spectator.sendAllReady(options.getTickRate());
+            listOfSpectators.add(spectator);
+            spectators.increment();
+        } finally {
+            lobbyLock.unlock();
+        }
+
+        if (over) // The game ended while the spectator was added, so the engine may not have seen it
+            spectator.finish();
+    }
+
+    void removeSpectator(SpectatorHub.Spectator spectator) {
+        if (listOfSpectators.remove(spectator))
+            spectators.decrement();
+    }
+
+    void addChatConnection(ChatConnection chatConnection) {
+        listOfChatConnections.add(chatConnection);
+        chatConnections.increment();
+    }
+
+    void removeChatConnection(ChatConnection chatConnection) {
+        if (listOfChatConnections.remove(chatConnection))
+            chatConnections.decrement();
+    }
+
+    /**
+     * This method sends a chat message to everyone in the match, unless the sender has gone over his limit. The message is the frame written by writeUTF.
+     * It is only queued here, and sent with the other messages of the next few milliseconds by the ChatDispatcher
+     */
+    void sendChatMessage(ByteBuffer message, TokenBucket senderLimit) {
+        if (!senderLimit.tryTake()) {
+            chatMessagesLimited.increment(); // Dropped. The sender's own client shows what he typed, so he isn't told
+            return;
+        }
+
+        chatMessages.increment();
+        chatDispatcher.submit(message);
+    }
+
+    /**
+     * This method returns whether players can still join the match, i.e. the game hasn't started and there is room for more players
+     */
+    boolean isOpen() {
+        lobbyLock.lock();
+        try {
+            return !allReady && numberOfPlayers < MAXPLAYERS;
+        } finally {
+            lobbyLock.unlock();
+        }
+    }
+
+    /**
+     * This method returns whether the game has started, i.e. all players have been ready
+     */
+    boolean isStarted() {
+        lobbyLock.lock();
+        try {
+            return allReady;
+        } finally {
+            lobbyLock.unlock();
+        }
+    }
+
+    boolean isOver() {
+        return over;
+    }
+
+    void log(String message) {
+        AsyncLogger.log("Match " + matchId + ": " + message); // Also called on the tick thread, which must not wait for the console
+    }
+
+    // The start of the names of the metrics of a player, e.g. "player.3.1." for player 1 of match 3
+    private String metricsPrefix(byte playerId) {
+        return "player." + matchId + "." + playerId + ".";
+    }
+
+    private void checkAllReady() {
+        boolean allReadyLocal = true;
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (!readyPlayers[i] && !leftPlayers[i]) {
+                allReadyLocal = false;
+                break;
+            }
+        }
+
+        if (allReadyLocal && !allReady && !listOfGameConnections.isEmpty()) { // Don't start a game if everyone has left
+            for (GameConnection gameConnection : listOfGameConnections)
+                gameConnection.sendAllReady(options.getTickRate());
+            for (SpectatorHub.Spectator spectator : listOfSpectators)
+                spectator.sendAllReady(options.getTickRate());
+
+            allReady = true;
+            log("All players ready");
+            new GameEngine(); // Create a new GameEngine object. The game runs on the scheduler
+        }
+    }
+
+    /**
+     * Runs the game. All its fields are only used by the tick running at the moment, so they need no locking.
+     * Input from the players is taken from the input queues, and the result of every tick is published as a GameState.
+     * <p>
+     * An input is applied in the tick it was sent for, or in the next tick if it arrives too late. The direction of a player is the direction
+     * of the last input applied, so the same inputs always give the same game, whenever they arrive.
+     */
+    class GameEngine {
+        private int[] directions = new int[numberOfPlayers];
+        private List<Queue<InputMessage>> pendingInputs = new ArrayList<>(); // Inputs received for later ticks, in the order they were sent
+        private int[] lastSequences = new int[numberOfPlayers]; // The sequence number of the last input received from every player
+        private boolean[] departedPlayers = new boolean[numberOfPlayers]; // The players that have left. Their inputs are ignored
+        private Simulation simulation; // The players, their trails and the rules. The engine decides when it runs and with which directions
+        private ByteBuffer sharedFullSnapshot; // The full snapshot of the last tick shared with the spectators, or null if there were no spectators
+        private ReplayRecorder replayRecorder; // Records the rounds if the server records matches, otherwise null
+        private byte roundsPlayed;
+        private ScheduledFuture<?> tickTask; // The ticks of the current round
+        private TickStatistics tickStatistics = new TickStatistics(options.getTickPeriod(), serverTickStatistics);
+        private SnapshotCodec.Encoder snapshotEncoder;
+        private FrameBuffer snapshotBuffer = new FrameBuffer(256); // Every tick's snapshot is encoded once into this buffer and then sent to all players
+        private FrameBuffer fullSnapshotBuffer = new FrameBuffer(256); // The full snapshot of the tick, for the players that have missed a snapshot
+
+        public GameEngine() {
+            long seed = options.getSeed().orElseGet(() -> new Random().nextLong()); // The same seed and inputs give the same game
+            log("Seed " + seed);
+            simulation = new Simulation(numberOfPlayers, seed);
+
+            if (options.getRecordDirectory() != null) {
+                Path file = options.getRecordDirectory().resolve("match-" + matchId + "-" + System.currentTimeMillis() + ".replay");
+                try {
+                    replayRecorder = ReplayRecorder.open(file, numberOfPlayers, seed, options.getTickRate());
+                    log("Recording to " + file);
+                } catch (IOException e) {
+                    AsyncLogger.log("Match " + matchId + ": recording to " + file + " failed", e); // The game can be played without the recording
+                }
+            }
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                pendingInputs.add(new ArrayDeque<>());
+                lastSequences[i] = -1;
+            }
+
+            startRound(); // The rounds run on the scheduler thread, so this returns right away
+        }
+
+        private void startRound() {
+            setStartingPoints();
+            if (replayRecorder != null)
+                replayRecorder.startRound();
+            log("Start round " + roundsPlayed);
+            tickTask = scheduler.scheduleAtFixedRate(this::tick, options.getTickPeriod(), options.getTickPeriod(), TimeUnit.NANOSECONDS); // Ticks are started at a fixed rate. If a tick runs late, the next ones run right after it to catch up
+        }
+
+        private void endRound() {
+            tickTask.cancel(false);
+            log("Round " + roundsPlayed++ + " over");
+            tickStatistics.dump("Match " + matchId);
+            if (sharedFullSnapshot != null)
+                for (SpectatorHub.Spectator spectator : listOfSpectators)
+                    spectator.sendRoundOver(sharedFullSnapshot);
+            for (GameConnection gameConnection : listOfGameConnections) { // How well the players have kept up during the round
+                gameConnection.sendRoundOver();
+                log("Outbound queue: " + gameConnection.getBackpressure());
+                gameConnection.getBackpressure().reset();
+            }
+            resetDataFields();
+            if (replayRecorder != null)
+                replayRecorder.endRound();
+
+            if (roundsPlayed < ROUNDSTOTAL)
+                scheduler.schedule(this::startRound, 5, TimeUnit.SECONDS); // Time between rounds
+            else {
+                log("Game over");
+                over = true;
+                for (SpectatorHub.Spectator spectator : listOfSpectators)
+                    spectator.finish(); // Closed when the last snapshots have been written
+                if (replayRecorder != null)
+                    replayRecorder.close();
+            }
+        }
+
+        private void resetDataFields() {
+            for (int i = 0; i < numberOfPlayers; i++) {
+                directions[i] = 0;
+                pendingInputs.get(i).clear(); // Inputs sent for this round that haven't been applied. The ticks of the next round start at 0 again
+            }
+        }
+
+        private void setStartingPoints() {
+            simulation.startRound();
+            snapshotEncoder = new SnapshotCodec.Encoder(numberOfPlayers);
+
+            for (int i = 0; i < numberOfPlayers; i++)
+                takeInputs(i, Integer.MIN_VALUE); // Throw away the inputs received between the rounds. They were sent for the last round
+        }
+
+        /**
+         * This method takes the new inputs of the player out of the input queue and applies the ones that are due in the tick. Inputs received before are ignored
+         */
+        private void takeInputs(int player, int tick) {
+            Queue<InputMessage> pending = pendingInputs.get(player);
+            InputMessage input;
+            while ((input = inputQueues.get(player).poll()) != null) {
+                if (input == InputMessage.LEAVE)
+                    departedPlayers[player] = true;
+                else if (lastSequences[player] == -1 || input.isNewerThan(lastSequences[player])) {
+                    lastSequences[player] = input.getSequence();
+                    if (tick != Integer.MIN_VALUE)
+                        pending.add(input);
+                }
+            }
+
+            if (departedPlayers[player]) {
+                pending.clear();
+                directions[player] = 0; // A player who has left goes straight until he dies
+                return;
+            }
+
+            while (!pending.isEmpty() && pending.peek().getTick(tick) <= tick) // Inputs that arrived too late are applied now
+                directions[player] = pending.poll().getDirection();
+        }
+
+        /**
+         * This method calculates and sends game info once. It is run by the scheduler once every tick period. The ticks of all matches share the threads of the scheduler
+         */
+        private void tick() {
+            try {
+                long tickStart = System.nanoTime();
+
+                // Calculate new coordinates for all players
+                for (int i = 0; i < numberOfPlayers; i++)
+                    takeInputs(i, simulation.getTicks());
+                simulation.move(directions);
+                long computeEnd = System.nanoTime();
+
+                // Check if any player is dead
+                simulation.checkForDeadPlayers();
+                for (int i = 0; i < numberOfPlayers; i++)
+                    if (simulation.hasJustDied(i))
+                        log("Player " + i + " " + simulation.getCauseOfDeath(i));
+                long collisionEnd = System.nanoTime();
+
+                // Publish the new state
+                GameState state = simulation.getState();
+                gameState = state;
+
+                // Send new coordinates & dead/alive status to all players
+                snapshotBuffer.reset();
+                snapshotEncoder.encode(snapshotBuffer, state);
+                fullSnapshotBuffer.reset();
+                SnapshotCodec.encodeFull(fullSnapshotBuffer, state);
+                ByteBuffer snapshot = snapshotBuffer.toByteBuffer(), fullSnapshot = fullSnapshotBuffer.toByteBuffer();
+                for (GameConnection client : listOfGameConnections)
+                    client.sendGameInfo(snapshot, fullSnapshot);
+                sharedFullSnapshot = null;
+                if (!listOfSpectators.isEmpty()) { // Copied once and shared by all spectators, since the buffers of the engine are reused next tick
+                    ByteBuffer sharedSnapshot = SpectatorHub.share(snapshot);
+                    sharedFullSnapshot = SpectatorHub.share(fullSnapshot);
+                    for (SpectatorHub.Spectator spectator : listOfSpectators)
+                        spectator.sendSnapshot(sharedSnapshot, sharedFullSnapshot);
+                }
+                if (replayRecorder != null)
+                    replayRecorder.recordTick(directions, snapshot);
+                long broadcastEnd = System.nanoTime();
+
+                tickStatistics.record(computeEnd - tickStart, collisionEnd - computeEnd, broadcastEnd - collisionEnd);
+
+                // Check if the game is over
+                if (simulation.isRoundOver()) // If 1 player is alive, someone has won. If 0 players are alive, it's a draw. If 1 player is playing, don't end the game until he dies
+                    endRound();
+            } catch (Exception e) {
+                AsyncLogger.log("Match " + matchId + ": tick failed", e); // An exception thrown out of a scheduled task would silently stop the ticks
+            }
+        }
+    }
+}
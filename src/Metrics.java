@@ -0,0 +1,189 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * The counters, histograms and gauges of the server, read by JMX and by a small HTTP server, e.g. "curl localhost:8080/metrics".
+ * <p>
+ * Counting is a LongAdder increment and a duration is a LatencyHistogram increment, so both can be done on the tick thread. Gauges are only calculated when
+ * the metrics are read. Every metric is a number with a name, and a histogram is shown as its count and percentiles in microseconds, so JMX and the
+ * text endpoint show the same names. Metrics can be added and removed while the server runs, e.g. those of every player.
+ */
+public class Metrics implements DynamicMBean {
+    private final Map<String, LongSupplier> values = new ConcurrentSkipListMap<>(); // Every number that is shown, sorted by name
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final List<Rate> rates = new ArrayList<>(); // Only changed before the rates are started
+
+    /**
+     * This method returns the counter with the given name, which is created the first time
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> {
+            LongAdder counter = new LongAdder();
+            values.put(key, counter::sum);
+            return counter;
+        });
+    }
+
+    /**
+     * This method shows the number of times per second the counter was incremented during the last second, as name_per_second
+     */
+    public void rate(String counterName) {
+        Rate rate = new Rate(counter(counterName));
+        rates.add(rate);
+        values.put(counterName + "_per_second", () -> rate.perSecond);
+    }
+
+    public void histogram(String name, LatencyHistogram histogram) {
+        values.put(name + "_count", histogram::getCount);
+        values.put(name + "_p50_us", () -> histogram.getPercentile(0.5));
+        values.put(name + "_p99_us", () -> histogram.getPercentile(0.99));
+        values.put(name + "_max_us", () -> histogram.getPercentile(1));
+    }
+
+    /**
+     * This method shows a number that is calculated when the metrics are read
+     */
+    public void gauge(String name, LongSupplier value) {
+        values.put(name, value);
+    }
+
+    /**
+     * This method removes the metrics whose names start with the given prefix, e.g. those of a player who has left
+     */
+    public void remove(String prefix) {
+        values.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * This method returns all metrics as text, one "name value" line per metric
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, LongSupplier> entry : values.entrySet())
+            text.append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        return text.toString();
+    }
+
+    /**
+     * This method starts calculating the rates once a second on the scheduler
+     */
+    public void startRates(ScheduledExecutorService scheduler) {
+        scheduler.scheduleAtFixedRate(() -> {
+            for (Rate rate : rates)
+                rate.update();
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * This method registers the metrics with the platform MBean server, so they can be read with e.g. JConsole
+     */
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            AsyncLogger.log("Registering the metrics with JMX failed", e); // The server runs without JMX
+        }
+    }
+
+    /**
+     * This method starts an HTTP server on the loopback address that returns the metrics as text at /metrics. It is only reachable from the machine the server runs on
+     */
+    public void startHttpServer(int port) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpServer.start(); // Requests are handled by a single thread of the HTTP server, never by the game threads
+        AsyncLogger.log("Metrics served at http://localhost:" + port + "/metrics");
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongSupplier value = values.get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value.getAsLong();
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            LongSupplier value = values.get(attribute);
+            if (value != null)
+                list.add(new Attribute(attribute, value.getAsLong()));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "The metrics have no operations"); // What the DynamicMBean contract asks for an unknown operation
+    }
+
+    /**
+     * This method describes the metrics there are right now. JMX clients ask again when they refresh, so they see the metrics of new players
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : values.keySet())
+            attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+        return new MBeanInfo(getClass().getName(), "Game server metrics", attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    private static class Rate {
+        private final LongAdder counter;
+        private long last;
+        private volatile long perSecond;
+
+        Rate(LongAdder counter) {
+            this.counter = counter;
+        }
+
+        void update() {
+            long now = counter.sum();
+            perSecond = now - last;
+            last = now;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * How the players move. Used by the Simulation on the server and by the Predictor on the client, which must move the local player exactly like the server does
+ * <p>
+ * Positions are fixed-point numbers with FRACTION_BITS fraction bits, so a move is a single integer addition and gives the same result on every machine.
+ * The step of every angle is calculated once with StrictMath, whose results are the same on every JVM, instead of calling Math.cos and Math.sin every tick.
+ * Angles are whole degrees, and the starting angle can be any of them, so there is a step for every degree and not only for the multiples of TURN_DEGREES.
+ */
+public class Movement implements GameConstants {
+    public static final int TURN_DEGREES = 6; // How much a player turns per tick while a key is held down
+    public static final int FRACTION_BITS = 16; // WIDTH and HEIGHT still fit in an int
+    private static final double ONE = 1 << FRACTION_BITS; // 1 pixel
+    private static final int[] X_STEPS = new int[360], Y_STEPS = new int[360]; // How far a player moves in one tick at every angle
+
+    static {
+        for (int angle = 0; angle < 360; angle++) {
+            X_STEPS[angle] = (int) StrictMath.round(StrictMath.cos(StrictMath.toRadians(angle)) * SPEED * ONE);
+            Y_STEPS[angle] = (int) StrictMath.round(StrictMath.sin(StrictMath.toRadians(angle)) * SPEED * ONE);
+        }
+    }
+
+    /**
+     * This method returns the angle after turning in the direction (-1, 0 or 1) for one tick. Angles are always between 0 and 359
+     */
+    public static int turn(int angle, int direction) {
+        return Math.floorMod(angle + TURN_DEGREES * direction, 360);
+    }
+
+    public static int moveX(int x, int angle) {
+        return x + X_STEPS[angle]; // Calculate new x coordinate based on the angle and speed
+    }
+
+    public static int moveY(int y, int angle) {
+        return y + Y_STEPS[angle]; // Calculate new y coordinate based on the angle and speed
+    }
+
+    /**
+     * This method converts a coordinate in pixels to a fixed-point position, rounded to the nearest position
+     */
+    public static int toFixed(double pixels) {
+        return (int) Math.round(pixels * ONE);
+    }
+
+    public static double toPixels(int position) {
+        return position / ONE;
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A single connection to the server that carries both the game and the chat, see MuxTransport. Used by the client instead of two sockets.
+ * <p>
+ * Everything is sent in frames: the channel (byte, GAME or CHAT), the length of the payload (unsigned short) and the payload. The payloads of a channel
+ * are a stream of the same bytes that the game connection or the chat connection would carry, so a message may be split over several frames and
+ * the frames of the two channels may be mixed. The server uses that to send the game before the chat.
+ * <p>
+ * Every channel has an InputStream and an OutputStream, so the code that reads and writes the game and the chat doesn't know it shares a socket.
+ * A virtual thread reads the frames and hands the payloads to the InputStream of their channel.
+ */
+public class MuxSocket implements Runnable {
+    public static final int GAME = 0, CHAT = 1; // The channels
+    public static final int HEADER = 3; // Channel and length
+    public static final int MAX_PAYLOAD = 0xFFFF;
+
+    private Socket socket;
+    private DataInputStream in;
+    private OutputStream out;
+    private ReentrantLock writeLock = new ReentrantLock(); // Held while a frame is written, since both channels write to the socket
+    private volatile int soTimeout; // How long a read of a channel waits for bytes, in milliseconds. 0 waits forever
+    private ChannelInputStream[] inputStreams = {new ChannelInputStream(), new ChannelInputStream()};
+    private ChannelOutputStream[] outputStreams = {new ChannelOutputStream(GAME), new ChannelOutputStream(CHAT)};
+
+    private MuxSocket(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true); // Send key presses right away
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * This method wraps a connected socket and starts reading its frames. The reader is started here instead of in the constructor, so it never sees a MuxSocket that isn't fully constructed
+     */
+    public static MuxSocket open(Socket socket) throws IOException {
+        MuxSocket muxSocket = new MuxSocket(socket);
+        Thread.ofVirtual().name("Mux reader").start(muxSocket); // A virtual thread, since a LoadDriver has thousands of these
+        return muxSocket;
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    public InputStream getInputStream(int channel) {
+        return inputStreams[channel];
+    }
+
+    /**
+     * This method returns the stream of the channel. Every write to it is sent as one or more frames right away, so wrap it in a BufferedOutputStream to send several writes in one frame
+     */
+    public OutputStream getOutputStream(int channel) {
+        return outputStreams[channel];
+    }
+
+    /**
+     * This method reads the frames and hands their payloads to the channels until the connection is closed
+     */
+    @Override
+    public void run() {
+        byte[] payload = new byte[MAX_PAYLOAD];
+        try {
+            while (true) {
+                int channel = in.readUnsignedByte();
+                int length = in.readUnsignedShort();
+                if (channel != GAME && channel != CHAT)
+                    throw new IOException("Unknown channel: " + channel);
+
+                in.readFully(payload, 0, length);
+                inputStreams[channel].append(payload, length);
+            }
+        } catch (IOException e) {
+            for (ChannelInputStream inputStream : inputStreams)
+                inputStream.end(e); // Whoever reads a channel gets the exception, like from a socket
+        }
+    }
+
+    /**
+     * This method sets how long a read of a channel waits, like the setSoTimeout of a socket. A read that times out throws a SocketTimeoutException
+     */
+    public void setSoTimeout(int timeout) {
+        soTimeout = timeout;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * The payloads received on a channel. Grows if the channel isn't read, which only happens to the chat of a client that doesn't show it.
+     * A lock instead of synchronized, since a bot reads it on a virtual thread, and waiting inside synchronized would pin its carrier thread
+     */
+    private class ChannelInputStream extends InputStream {
+        private ReentrantLock lock = new ReentrantLock();
+        private Condition readable = lock.newCondition();
+        private byte[] buffer = new byte[4096];
+        private int start, end; // The bytes not read yet
+        private IOException failure; // Set when the connection is closed
+
+        void append(byte[] bytes, int length) {
+            lock.lock();
+            try {
+                if (end + length > buffer.length) {
+                    int unread = end - start;
+                    byte[] target = unread + length > buffer.length ? new byte[Math.max(2 * buffer.length, unread + length)] : buffer;
+                    System.arraycopy(buffer, start, target, 0, unread);
+                    buffer = target;
+                    start = 0;
+                    end = unread;
+                }
+                System.arraycopy(bytes, 0, buffer, end, length);
+                end += length;
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void end(IOException failure) {
+            lock.lock();
+            try {
+                this.failure = failure;
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            lock.lock();
+            try {
+                if (!await())
+                    return -1;
+                return buffer[start++] & 0xFF;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+
+            lock.lock();
+            try {
+                if (!await())
+                    return -1;
+
+                int read = Math.min(length, end - start);
+                System.arraycopy(buffer, start, bytes, offset, read);
+                start += read;
+                return read;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return end - start;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Waits until there are bytes to read, at most soTimeout milliseconds if it is set. Returns false at the end of the stream
+        private boolean await() throws IOException {
+            long timeout = TimeUnit.MILLISECONDS.toNanos(soTimeout);
+            while (start == end) {
+                if (failure instanceof EOFException)
+                    return false;
+                if (failure != null)
+                    throw failure;
+                try {
+                    if (soTimeout == 0)
+                        readable.await();
+                    else if ((timeout = readable.awaitNanos(timeout)) <= 0)
+                        throw new SocketTimeoutException("Read timed out");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Sends what is written to it as frames of its channel
+     */
+    private class ChannelOutputStream extends OutputStream {
+        private final int channel;
+
+        ChannelOutputStream(int channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            writeLock.lock();
+            try {
+                while (length > 0) {
+                    int payload = Math.min(length, MAX_PAYLOAD);
+                    out.write(channel);
+                    out.write(payload >> 8);
+                    out.write(payload);
+                    out.write(bytes, offset, payload);
+                    offset += payload;
+                    length -= payload;
+                }
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
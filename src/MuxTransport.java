@@ -0,0 +1,365 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Serves the players who send the game and the chat over a single connection, see MuxSocket. All of them are served by a single thread with a Selector, whichever transport the other players use.
+ * <p>
+ * A player joins a match with one connection, so there is no chat connection to pair with the game connection later. A client that never opens its chat
+ * can't hold up the players who join after it, and the server has one connection per player instead of two. The payloads of the game channel and
+ * the chat channel are the same messages as those of GameClientHandler and ChatClientHandler.
+ * <p>
+ * Every message is sent as frames queued by channel. A queued game frame is always written before a queued chat frame, and the chat is cut into
+ * frames of at most CHAT_FRAME bytes, so a snapshot waits for at most one of them. Like in the NioTransport, COALESCE works like DROP here.
+ */
+public class MuxTransport implements Runnable {
+    private static final int BUFFER_SIZE = 16 * 1024; // Bytes every channel of a connection may have waiting. What happens when it is full is decided by the slow client policy
+    private static final int CHAT_FRAME = 1024; // The largest chat frame. Smaller frames let the game get past a long chat batch sooner, at 3 bytes per frame
+    private static final int CHAT_MESSAGE_HEADER = 2; // A chat message is written with writeUTF, i.e. an unsigned short length followed by the text
+
+    private GameServer gameServer;
+    private int port;
+    private Selector selector;
+
+    public MuxTransport(GameServer gameServer, int port) {
+        this.gameServer = gameServer;
+        this.port = port;
+    }
+
+    @Override
+    public void run() {
+        try {
+            selector = Selector.open();
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            AsyncLogger.log("Multiplexed server started at " + new Date());
+
+            while (true) {
+                selector.select();
+
+                for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        SocketChannel channel;
+                        while ((channel = serverChannel.accept()) != null)
+                            accept(channel);
+                    }
+                    else {
+                        MuxConnection connection = (MuxConnection) key.attachment();
+                        if (key.isReadable())
+                            connection.read();
+                        if (key.isValid() && key.isWritable())
+                            connection.write();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            AsyncLogger.log("Multiplexed server stopped", e);
+        }
+    }
+
+    private void accept(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        MuxConnection connection = new MuxConnection(channel);
+        Match match = gameServer.addPlayer(connection);
+        match.addChatConnection(connection);
+        match.log("Player " + connection.playerId + " joined multiplexed server. Connection from " + channel.getRemoteAddress() + " at " + new Date());
+        match.log("Player " + connection.playerId + " waiting for ready");
+        match.sendNumberOfPlayers();
+    }
+
+    /**
+     * A connection that is both the game connection and the chat connection of a player
+     */
+    class MuxConnection implements GameConnection, ChatConnection {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocateDirect(4096); // The frames that have been read. Only used by the selector thread
+        private ByteBuffer gameIn = ByteBuffer.allocate(1024), chatIn = ByteBuffer.allocate(1024); // The payloads of every channel that haven't been handled. Kept in write mode
+        private Deque<ByteBuffer> gameFrames = new ArrayDeque<>(), chatFrames = new ArrayDeque<>(); // Frames waiting to be written
+        private int gameBytes, chatBytes; // The size of the frames waiting in every queue
+        private ByteBuffer current; // The frame being written. It may have been written in part, so nothing can be written before it
+        private Backpressure backpressure = new Backpressure(gameServer.getOptions());
+        private boolean closed;
+
+        private Match match;
+        private byte playerId;
+        private boolean ready; // Whether the player has signaled he is ready. Everything after that is batches of inputs
+        private UdpTransport.Endpoint udpEndpoint = gameServer.openUdpEndpoint(); // Where the snapshots are sent if they are sent as UDP datagrams
+        private TokenBucket chatLimit = gameServer.getOptions().newChatLimit(); // How many chat messages the player may send
+
+        MuxConnection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) == -1)
+                    throw new EOFException();
+
+                in.flip();
+                while (in.remaining() >= MuxSocket.HEADER) {
+                    int channelId = in.get(in.position()) & 0xFF;
+                    int length = in.getShort(in.position() + 1) & 0xFFFF;
+                    if (channelId != MuxSocket.GAME && channelId != MuxSocket.CHAT) {
+                        close("Unknown channel: " + channelId);
+                        return;
+                    }
+                    if (in.remaining() < MuxSocket.HEADER + length) {
+                        if (in.capacity() < MuxSocket.HEADER + length) { // The frame is larger than the buffer, so move what has been read so far to a buffer it fits in
+                            ByteBuffer larger = ByteBuffer.allocateDirect(MuxSocket.HEADER + MuxSocket.MAX_PAYLOAD);
+                            larger.put(in);
+                            in = larger;
+                            return;
+                        }
+                        break; // Wait for the rest of the frame
+                    }
+
+                    in.position(in.position() + MuxSocket.HEADER);
+                    ByteBuffer payload = in.slice();
+                    payload.limit(length);
+                    in.position(in.position() + length);
+
+                    if (channelId == MuxSocket.GAME)
+                        gameIn = processGame(append(gameIn, payload));
+                    else
+                        chatIn = processChat(append(chatIn, payload));
+                    if (closed)
+                        return;
+                }
+                in.compact();
+            } catch (IOException e) {
+                close(e.toString());
+            }
+        }
+
+        // Adds the payload to the bytes of its channel, in a larger buffer if it doesn't fit, and returns the buffer flipped for reading
+        private ByteBuffer append(ByteBuffer buffer, ByteBuffer payload) {
+            if (buffer.remaining() < payload.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + payload.remaining()));
+                buffer.flip();
+                buffer = larger.put(buffer);
+            }
+            return buffer.put(payload).flip();
+        }
+
+        /**
+         * The same messages as GameNioConnection. Returns the buffer in write mode with the bytes that are not used
+         */
+        private ByteBuffer processGame(ByteBuffer in) {
+            if (!ready && in.hasRemaining()) {
+                ready = true;
+                match.setPlayerReady(playerId, in.get() != 0); // The same as readBoolean
+            }
+
+            while (in.hasRemaining()) {
+                int count = in.get(in.position()) & 0xFF;
+                if (count < 1 || count > InputMessage.MAX_INPUTS) {
+                    close("Invalid number of inputs: " + count);
+                    break;
+                }
+                if (in.remaining() < 1 + count * InputMessage.INPUT_SIZE)
+                    break; // Wait for the rest of the batch
+
+                in.get();
+                for (int i = 0; i < count; i++)
+                    match.addInput(playerId, new InputMessage(in.getShort() & 0xFFFF, in.getShort() & 0xFFFF, in.get()));
+            }
+            return in.compact();
+        }
+
+        /**
+         * The same messages as ChatNioConnection. Every complete chat message is handed to the match as it was received
+         */
+        private ByteBuffer processChat(ByteBuffer in) {
+            while (in.remaining() >= CHAT_MESSAGE_HEADER) {
+                int length = CHAT_MESSAGE_HEADER + (in.getShort(in.position()) & 0xFFFF);
+                if (in.remaining() < length)
+                    break; // Wait for the rest of the message. append makes room for it
+
+                ByteBuffer message = in.slice();
+                message.limit(length);
+                in.position(in.position() + length);
+
+                match.sendChatMessage(message, chatLimit);
+            }
+            return in.compact();
+        }
+
+        /**
+         * This method queues a message on the game channel and writes what the socket can take. It can be called from any thread
+         */
+        private synchronized void sendGame(ByteBuffer message, boolean snapshot) {
+            if (closed)
+                return;
+
+            int size = MuxSocket.HEADER + message.remaining(); // Every game message is smaller than MAX_PAYLOAD
+            if (gameBytes + size > BUFFER_SIZE) {
+                if (backpressure.dropped(snapshot))
+                    close("Too slow");
+                return;
+            }
+
+            gameFrames.add(frame(MuxSocket.GAME, message.duplicate())); // Duplicate so the position of the message isn't changed, since the same message is sent to other connections
+            gameBytes += size;
+            backpressure.queued(size, snapshot);
+            backpressure.sent(size);
+            write();
+        }
+
+        private synchronized void sendChat(ByteBuffer message) {
+            if (closed)
+                return;
+
+            int size = message.remaining() + MuxSocket.HEADER * ((message.remaining() + CHAT_FRAME - 1) / CHAT_FRAME);
+            if (chatBytes + size > BUFFER_SIZE) {
+                if (backpressure.dropped(false))
+                    close("Too slow");
+                return;
+            }
+
+            ByteBuffer rest = message.duplicate();
+            while (rest.hasRemaining()) {
+                ByteBuffer payload = rest.slice();
+                payload.limit(Math.min(CHAT_FRAME, rest.remaining()));
+                rest.position(rest.position() + payload.remaining());
+                chatFrames.add(frame(MuxSocket.CHAT, payload));
+            }
+            chatBytes += size;
+            backpressure.queued(size, false);
+            backpressure.sent(size);
+            write();
+        }
+
+        private ByteBuffer frame(int channelId, ByteBuffer payload) {
+            ByteBuffer frame = ByteBuffer.allocate(MuxSocket.HEADER + payload.remaining());
+            frame.put((byte) channelId).putShort((short) payload.remaining()).put(payload);
+            return frame.flip();
+        }
+
+        synchronized void write() {
+            if (closed)
+                return;
+
+            try {
+                while (true) {
+                    if (current == null) { // Take the next frame, the game first
+                        if ((current = gameFrames.poll()) != null)
+                            gameBytes -= current.remaining();
+                        else if ((current = chatFrames.poll()) != null)
+                            chatBytes -= current.remaining();
+                        else
+                            break;
+                    }
+
+                    backpressure.dequeued(channel.write(current));
+                    if (current.hasRemaining())
+                        break; // The socket is full
+                    current = null;
+                }
+
+                if (current != null && (key.interestOps() & SelectionKey.OP_WRITE) == 0) { // Let the selector thread write the rest when there's room
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    selector.wakeup();
+                } else if (current == null && (key.interestOps() & SelectionKey.OP_WRITE) != 0)
+                    key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException e) {
+                close(e.toString());
+            }
+        }
+
+        void close(String reason) {
+            if (!closeChannel(reason))
+                return;
+
+            if (match != null) {
+                match.removePlayer(playerId, this);
+                match.removeChatConnection(this);
+            }
+            if (udpEndpoint != null)
+                udpEndpoint.close();
+        }
+
+        // Returns false if the connection was already closed
+        private synchronized boolean closeChannel(String reason) {
+            if (closed)
+                return false;
+
+            closed = true;
+            AsyncLogger.log("Connection from " + channel.socket().getRemoteSocketAddress() + " closed: " + reason);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                AsyncLogger.log("Closing the connection failed", e); // May run on the tick thread, which must not print
+            }
+            return true;
+        }
+
+        @Override
+        public void joinMatch(Match match, byte playerId) {
+            this.match = match;
+            this.playerId = playerId;
+            sendGame(ByteBuffer.wrap(new byte[]{playerId}), false); // Send player ID
+        }
+
+        @Override
+        public void sendNumberOfPlayers(byte numberOfPlayers) {
+            sendGame(ByteBuffer.wrap(new byte[]{0, numberOfPlayers}), false);
+        }
+
+        @Override
+        public void sendPlayerReady(byte playerId) {
+            sendGame(ByteBuffer.wrap(new byte[]{1, playerId}), false);
+        }
+
+        @Override
+        public void sendAllReady(int tickRate) {
+            sendGame(ByteBuffer.allocate(7).put((byte) 2).putShort((short) tickRate).putInt(udpEndpoint != null ? udpEndpoint.getToken() : 0).flip(), false);
+        }
+
+        @Override
+        public synchronized void sendGameInfo(ByteBuffer snapshot, ByteBuffer fullSnapshot) {
+            if (udpEndpoint != null)
+                backpressure.sent(udpEndpoint.send(fullSnapshot));
+            else
+                sendGame(backpressure.needsFullSnapshot() ? fullSnapshot : snapshot, true);
+        }
+
+        @Override
+        public void sendRoundOver() {
+            if (udpEndpoint != null)
+                udpEndpoint.endRound();
+        }
+
+        @Override
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        @Override
+        public void receiveChatMessage(ByteBuffer message) {
+            sendChat(message);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Date;
+import java.util.Iterator;
+
+/**
+ * Serves the game port and the chat port from a single thread with a Selector, instead of starting two threads per player.
+ * <p>
+ * The messages are the same as those of GameClientHandler and ChatClientHandler, so the client can't tell the difference.
+ * Messages are sent right away from the thread sending them if the socket can take them. Whatever doesn't fit is sent by the selector thread when the socket is writable.
+ * <p>
+ * The bytes in the outbound buffer can't be taken back, so COALESCE works like DROP here: snapshots that don't fit are dropped, and a full snapshot is sent when there's room again.
+ */
+public class NioTransport implements Runnable {
+    private static final int BUFFER_SIZE = 16 * 1024; // Size of the outbound buffer of every connection. What happens when it is full is decided by the slow client policy
+    private static final int CHAT_MESSAGE_HEADER = 2; // A chat message is written with writeUTF, i.e. an unsigned short length followed by the text
+
+    private GameServer gameServer;
+    private int portGame, portChat;
+    private Selector selector;
+    private ServerSocketChannel serverChannelGame, serverChannelChat;
+
+    public NioTransport(GameServer gameServer, int portGame, int portChat) {
+        this.gameServer = gameServer;
+        this.portGame = portGame;
+        this.portChat = portChat;
+    }
+
+    @Override
+    public void run() {
+        try {
+            selector = Selector.open();
+
+            serverChannelGame = openServerChannel(portGame);
+            AsyncLogger.log("Game server started at " + new Date());
+
+            serverChannelChat = openServerChannel(portChat);
+            AsyncLogger.log("Chat server started at " + new Date());
+
+            while (true) {
+                selector.select();
+
+                for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable())
+                        acceptPending((ServerSocketChannel) key.channel());
+                    else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable())
+                            connection.read();
+                        if (key.isValid() && key.isWritable())
+                            connection.write();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            AsyncLogger.log("Game server stopped", e);
+        }
+    }
+
+    private ServerSocketChannel openServerChannel(int port) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        return serverChannel;
+    }
+
+    private void accept(ServerSocketChannel serverChannel, SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        if (serverChannel == serverChannelGame) {
+            GameNioConnection gameConnection = new GameNioConnection(channel);
+            Match match = gameServer.addPlayer(gameConnection);
+            match.log("Player " + gameConnection.playerId + " joined game server. Connection from " + channel.getRemoteAddress() + " at " + new Date());
+            match.log("Player " + gameConnection.playerId + " waiting for ready");
+            match.sendNumberOfPlayers();
+        } else {
+            // The client connects to the game port before the chat port, so accept any waiting game connection first to put the chat connection in the right match
+            while (acceptPending(serverChannelGame)) {
+                // Accept until there are no more waiting game connections
+            }
+
+            Match match = gameServer.getLastJoinedMatch();
+            if (match == null) {
+                AsyncLogger.log("Chat connection from " + channel.getRemoteAddress() + " closed: no player has joined");
+                channel.close();
+                return;
+            }
+
+            ChatNioConnection chatConnection = new ChatNioConnection(channel, match);
+            match.addChatConnection(chatConnection);
+            match.log("Chat client joined chat server. Connection from " + channel.getRemoteAddress() + " at " + new Date());
+        }
+    }
+
+    // Accepts one waiting connection, if any. Returns whether a connection was accepted
+    private boolean acceptPending(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return false;
+
+        accept(serverChannel, channel);
+        return true;
+    }
+
+    abstract class Connection {
+        SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocateDirect(1024);
+        private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE); // Bytes waiting to be written. Kept in write mode between calls
+        Backpressure backpressure = new Backpressure(gameServer.getOptions());
+        private boolean closed;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * This method handles the bytes that have been read. Bytes that are not used, e.g. the first part of a message, must be left in the buffer
+         */
+        abstract void process(ByteBuffer in);
+
+        void read() {
+            try {
+                if (channel.read(in) == -1)
+                    throw new EOFException();
+
+                in.flip();
+                process(in);
+                in.compact(); // process may have replaced the buffer with a larger one
+            } catch (IOException e) {
+                close(e.toString());
+            }
+        }
+
+        /**
+         * This method sends a message. It can be called from any thread. If the connection has fallen so far behind that the message doesn't fit in the buffer, it is dropped
+         */
+        void send(ByteBuffer message) {
+            send(message, false);
+        }
+
+        /**
+         * This method sends a snapshot. If a snapshot has been dropped, the full snapshot is sent instead, so the client can decode it
+         */
+        synchronized void sendSnapshot(ByteBuffer snapshot, ByteBuffer fullSnapshot) {
+            send(backpressure.needsFullSnapshot() ? fullSnapshot : snapshot, true);
+        }
+
+        private synchronized void send(ByteBuffer message, boolean snapshot) {
+            if (closed)
+                return;
+
+            if (out.remaining() < message.remaining()) {
+                if (backpressure.dropped(snapshot))
+                    close("Too slow");
+                return;
+            }
+
+            backpressure.queued(message.remaining(), snapshot);
+            backpressure.sent(message.remaining());
+            out.put(message.duplicate()); // Duplicate so the position of the message isn't changed, since the same message is sent to other connections
+            write();
+        }
+
+        synchronized void write() {
+            if (closed)
+                return;
+
+            try {
+                out.flip();
+                backpressure.dequeued(channel.write(out));
+                out.compact();
+
+                if (out.position() > 0 && (key.interestOps() & SelectionKey.OP_WRITE) == 0) { // The socket is full. Let the selector thread write the rest when there's room
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    selector.wakeup();
+                } else if (out.position() == 0 && (key.interestOps() & SelectionKey.OP_WRITE) != 0)
+                    key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException e) {
+                close(e.toString());
+            }
+        }
+
+        synchronized void close(String reason) {
+            if (closed)
+                return;
+
+            closed = true;
+            AsyncLogger.log("Connection from " + channel.socket().getRemoteSocketAddress() + " closed: " + reason);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                AsyncLogger.log("Closing the connection failed", e); // May run on the tick thread, which must not print
+            }
+        }
+    }
+
+    class GameNioConnection extends Connection implements GameConnection {
+        private Match match;
+        private byte playerId;
+        private boolean ready; // Whether the player has signaled he is ready. Everything after that is batches of inputs
+        private UdpTransport.Endpoint udpEndpoint = gameServer.openUdpEndpoint(); // Where the snapshots are sent if they are sent as UDP datagrams
+
+        GameNioConnection(SocketChannel channel) throws IOException {
+            super(channel);
+        }
+
+        @Override
+        void process(ByteBuffer in) {
+            if (!ready && in.hasRemaining()) {
+                ready = true;
+                match.setPlayerReady(playerId, in.get() != 0); // The same as readBoolean
+            }
+
+            while (in.hasRemaining()) {
+                int count = in.get(in.position()) & 0xFF;
+                if (count < 1 || count > InputMessage.MAX_INPUTS) {
+                    close("Invalid number of inputs: " + count);
+                    return;
+                }
+                if (in.remaining() < 1 + count * InputMessage.INPUT_SIZE)
+                    return; // Wait for the rest of the batch
+
+                in.get();
+                for (int i = 0; i < count; i++)
+                    match.addInput(playerId, new InputMessage(in.getShort() & 0xFFFF, in.getShort() & 0xFFFF, in.get()));
+            }
+        }
+
+        @Override
+        public void joinMatch(Match match, byte playerId) {
+            this.match = match;
+            this.playerId = playerId;
+            send(ByteBuffer.wrap(new byte[]{playerId})); // Send player ID
+        }
+
+        @Override
+        public void sendNumberOfPlayers(byte numberOfPlayers) {
+            send(ByteBuffer.wrap(new byte[]{0, numberOfPlayers}));
+        }
+
+        @Override
+        public void sendPlayerReady(byte playerId) {
+            send(ByteBuffer.wrap(new byte[]{1, playerId}));
+        }
+
+        @Override
+        public void sendAllReady(int tickRate) {
+            send(ByteBuffer.allocate(7).put((byte) 2).putShort((short) tickRate).putInt(udpEndpoint != null ? udpEndpoint.getToken() : 0).flip());
+        }
+
+        @Override
+        public void sendGameInfo(ByteBuffer snapshot, ByteBuffer fullSnapshot) {
+            if (udpEndpoint != null)
+                backpressure.sent(udpEndpoint.send(fullSnapshot));
+            else
+                sendSnapshot(snapshot, fullSnapshot);
+        }
+
+        @Override
+        public void sendRoundOver() {
+            if (udpEndpoint != null)
+                udpEndpoint.endRound();
+        }
+
+        @Override
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        @Override
+        void close(String reason) {
+            super.close(reason);
+            if (match != null)
+                match.removePlayer(playerId, this);
+            if (udpEndpoint != null)
+                udpEndpoint.close();
+        }
+    }
+
+    class ChatNioConnection extends Connection implements ChatConnection {
+        private Match match;
+        private TokenBucket chatLimit = gameServer.getOptions().newChatLimit(); // How many chat messages the player may send
+
+        ChatNioConnection(SocketChannel channel, Match match) throws IOException {
+            super(channel);
+            this.match = match;
+        }
+
+        /**
+         * Every complete chat message is handed to the match as it was received, so it never has to be decoded
+         */
+        @Override
+        void process(ByteBuffer in) {
+            while (in.remaining() >= CHAT_MESSAGE_HEADER) {
+                int length = CHAT_MESSAGE_HEADER + (in.getShort(in.position()) & 0xFFFF);
+
+                if (in.remaining() < length) {
+                    if (in.capacity() < length) { // The message is larger than the buffer, so move what has been read so far to a buffer it fits in
+                        ByteBuffer larger = ByteBuffer.allocateDirect(length);
+                        larger.put(in);
+                        larger.flip();
+                        this.in = larger;
+                    }
+                    return;
+                }
+
+                ByteBuffer message = in.slice();
+                message.limit(length);
+                in.position(in.position() + length);
+
+                match.sendChatMessage(message, chatLimit);
+            }
+        }
+
+        @Override
+        public void receiveChatMessage(ByteBuffer message) {
+            send(message);
+        }
+
+        @Override
+        synchronized void close(String reason) {
+            super.close(reason);
+            match.removeChatConnection(this);
+        }
+    }
+}
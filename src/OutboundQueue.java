@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The messages waiting to be sent to one blocking connection, and the writer that sends them. Messages are added by the threads
+ * broadcasting them, e.g. the GameEngine, which never waits for the socket. The writer runs on its own thread and is the only one writing to the socket.
+ * <p>
+ * What happens when the queue is full is decided by the slow client policy, see Backpressure.
+ */
+public class OutboundQueue implements Runnable {
+    private static final int CAPACITY = 256; // About 6 seconds of snapshots at the default tick rate
+    private static final Message CLOSE = new Message(new byte[0], false); // Put in the queue to stop the writer
+
+    private Socket socket;
+    private OutputStream outputStream;
+    private BlockingQueue<Message> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private Backpressure backpressure;
+    private AtomicBoolean closed = new AtomicBoolean(); // Not synchronized, since that would pin a virtual thread
+
+    public OutboundQueue(Socket socket, OutputStream outputStream, ServerOptions options) {
+        this.socket = socket;
+        this.outputStream = outputStream;
+        backpressure = new Backpressure(options);
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * This method queues a copy of the message and returns right away. It can be called from any thread
+     */
+    public void send(ByteBuffer message) {
+        if (!closed.get() && !offer(new Message(copy(message), false)))
+            drop(false);
+    }
+
+    public void send(byte... message) {
+        send(ByteBuffer.wrap(message));
+    }
+
+    /**
+     * This method queues a copy of a snapshot. If a snapshot has been dropped, the full snapshot is queued instead, so the client can decode it
+     */
+    public void sendSnapshot(ByteBuffer snapshot, ByteBuffer fullSnapshot) {
+        if (closed.get())
+            return;
+
+        if (offer(new Message(copy(backpressure.needsFullSnapshot() ? fullSnapshot : snapshot), true)))
+            return;
+
+        if (backpressure.getPolicy() == ServerOptions.SlowClientPolicy.COALESCE) {
+            queue.removeIf(this::removeSnapshot); // The client only needs the latest snapshot. The writer may be writing one of them right now, which is fine
+            if (offer(new Message(copy(fullSnapshot), true)))
+                return;
+        }
+
+        drop(true);
+    }
+
+    private boolean offer(Message message) {
+        if (!queue.offer(message))
+            return false;
+
+        backpressure.queued(message.bytes.length, message.snapshot);
+        return true;
+    }
+
+    private boolean removeSnapshot(Message message) {
+        if (!message.snapshot)
+            return false;
+
+        backpressure.dequeued(message.bytes.length);
+        backpressure.dropped(true); // Counted as dropped. Never closes the connection, since the policy is COALESCE
+        return true;
+    }
+
+    private void drop(boolean snapshot) {
+        if (backpressure.dropped(snapshot))
+            close("Too slow");
+    }
+
+    private static byte[] copy(ByteBuffer message) {
+        byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes); // Duplicate so the position of the message isn't changed, since the same message is sent to other connections
+        return bytes;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Message message = queue.take();
+                do {
+                    if (message == CLOSE)
+                        return;
+                    outputStream.write(message.bytes);
+                    backpressure.dequeued(message.bytes.length);
+                    backpressure.sent(message.bytes.length);
+                } while ((message = queue.poll()) != null); // Write everything that is waiting before flushing
+
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            close(e.toString());
+        } catch (InterruptedException e) {
+            close(e.toString());
+        }
+    }
+
+    public void close(String reason) {
+        if (!closed.compareAndSet(false, true)) // Only close once
+            return;
+
+        AsyncLogger.log("Connection from " + socket.getRemoteSocketAddress() + " closed: " + reason);
+        queue.clear();
+        queue.offer(CLOSE);
+        try {
+            socket.close(); // The reader of the connection gets an exception and removes the player
+        } catch (IOException e) {
+            AsyncLogger.log("Closing the connection failed", e); // May run on the tick thread, which must not print
+        }
+    }
+
+    private static class Message {
+        private final byte[] bytes;
+        private final boolean snapshot; // Snapshots can be replaced by a later one. Other messages can't
+
+        Message(byte[] bytes, boolean snapshot) {
+            this.bytes = bytes;
+            this.snapshot = snapshot;
+        }
+    }
+}
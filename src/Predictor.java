@@ -0,0 +1,135 @@
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Predicts where the local player is, so his head moves as soon as a key is pressed instead of when the server has sent the result back.
+ * <p>
+ * The predictor moves the player with the same Movement as the Simulation on the server, one tick at a time, using the direction of the keys held down.
+ * Every change of direction is given a tick, which is sent to the server with it, see InputMessage. If it arrives in time, the server applies it in the same tick.
+ * Every tick it predicts is remembered together with the direction used. When a snapshot arrives, the predicted state of its tick is replaced
+ * by the one from the server, and the ticks after it are predicted again with the same directions. Mistakes, e.g. when the server applied a key press
+ * a tick later than predicted, are corrected that way.
+ * <p>
+ * Collisions aren't predicted. The player stops when the server says he is dead.
+ * <p>
+ * The methods are called from the network thread and the FX thread, so they are synchronized.
+ */
+public class Predictor {
+    private static final int HISTORY = 64; // The number of ticks remembered, i.e. how far ahead of the server the prediction can get. Must be a power of two
+
+    private byte playerId;
+    private int[] xPositions = new int[HISTORY], yPositions = new int[HISTORY]; // Fixed-point, see Movement
+    private int[] angles = new int[HISTORY], directions = new int[HISTORY]; // The state after each tick, and the direction used to get there. Indexed by tick & (HISTORY - 1)
+    private int serverTick = -1, predictedTick = -1; // The last tick received from the server and the last tick predicted. -1 until the first snapshot
+    private int direction; // The direction used for the last tick predicted
+    private Queue<ScheduledInput> scheduledInputs = new ArrayDeque<>(); // Changes of direction for ticks that haven't been predicted yet
+    private int lastInputTick = -1; // The tick of the last change of direction. Every change gets its own tick, so quick key presses aren't lost
+    private boolean dead;
+    private double x, y; // The position returned by the last call to predict
+
+    public Predictor(byte playerId) {
+        this.playerId = playerId;
+    }
+
+    public byte getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * This method is called on the FX thread when the direction of the keys held down changes. It returns the tick the change is applied in,
+     * which is the first tick that hasn't been predicted yet
+     */
+    public synchronized int setDirection(int direction) {
+        lastInputTick = Math.max(predictedTick + 1, lastInputTick + 1);
+        scheduledInputs.add(new ScheduledInput(lastInputTick, direction));
+        return lastInputTick;
+    }
+
+    /**
+     * This method is called on the network thread for every snapshot with the state of the local player on the server
+     */
+    public synchronized void reconcile(int tick, double x, double y, int angle, boolean dead) {
+        this.dead = dead;
+        if (serverTick != -1)
+            tick = serverTick + (short) (tick - serverTick); // The tick is sent as a short, so it may have wrapped around
+        if (tick <= serverTick)
+            return; // Only the newest state counts
+
+        int lastPredictedTick = predictedTick;
+        store(tick, Movement.toFixed(x), Movement.toFixed(y), angle); // The coordinates in a snapshot are rounded to 1/32 pixel, which is exact as a fixed-point position
+        serverTick = tick;
+
+        if (lastPredictedTick <= tick || lastPredictedTick - tick >= HISTORY) { // The prediction is behind the server, or too far ahead to be corrected
+            predictedTick = tick;
+            return;
+        }
+
+        for (int t = tick + 1; t <= lastPredictedTick; t++) // Predict the ticks after it again, with the directions used the first time
+            step(t, directions[t & (HISTORY - 1)]);
+        predictedTick = lastPredictedTick;
+    }
+
+    /**
+     * This method predicts the position of the player at a point in time given as a tick, usually between two ticks. It returns false if there is nothing
+     * to predict, i.e. no snapshot has arrived or the player is dead. The position is returned by getX and getY
+     */
+    public synchronized boolean predict(double tick) {
+        if (serverTick == -1 || dead)
+            return false;
+
+        int target = Math.min((int) Math.floor(tick) + 1, serverTick + HISTORY - 1); // The history can't hold more ticks than this
+        while (predictedTick < target) {
+            predictedTick++;
+            while (!scheduledInputs.isEmpty() && scheduledInputs.peek().tick <= predictedTick) // Like the GameEngine, use the last change that is due
+                direction = scheduledInputs.poll().direction;
+            directions[predictedTick & (HISTORY - 1)] = direction;
+            step(predictedTick, direction);
+        }
+
+        int before = (int) Math.floor(tick);
+        if (before < serverTick) { // The time is before the newest state from the server, so show that
+            x = Movement.toPixels(xPositions[serverTick & (HISTORY - 1)]);
+            y = Movement.toPixels(yPositions[serverTick & (HISTORY - 1)]);
+        } else if (before >= predictedTick) { // The time is after the last tick the history can hold
+            x = Movement.toPixels(xPositions[predictedTick & (HISTORY - 1)]);
+            y = Movement.toPixels(yPositions[predictedTick & (HISTORY - 1)]);
+        } else { // Between two predicted ticks
+            double fraction = Math.min(1, tick - before);
+            int i = before & (HISTORY - 1), j = (before + 1) & (HISTORY - 1);
+            x = Movement.toPixels(xPositions[i]) + Movement.toPixels(xPositions[j] - xPositions[i]) * fraction;
+            y = Movement.toPixels(yPositions[i]) + Movement.toPixels(yPositions[j] - yPositions[i]) * fraction;
+        }
+        return true;
+    }
+
+    public synchronized double getX() {
+        return x;
+    }
+
+    public synchronized double getY() {
+        return y;
+    }
+
+    // Calculates the state of the tick from the state of the tick before it, like the Simulation does
+    private void step(int tick, int direction) {
+        int previous = (tick - 1) & (HISTORY - 1);
+        int angle = Movement.turn(angles[previous], direction);
+        store(tick, Movement.moveX(xPositions[previous], angle), Movement.moveY(yPositions[previous], angle), angle);
+    }
+
+    private void store(int tick, int x, int y, int angle) {
+        int i = tick & (HISTORY - 1);
+        xPositions[i] = x;
+        yPositions[i] = y;
+        angles[i] = angle;
+    }
+
+    private static class ScheduledInput {
+        private final int tick, direction;
+
+        ScheduledInput(int tick, int direction) {
+            this.tick = tick;
+            this.direction = direction;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Plays a recording made by the ReplayRecorder without a window, e.g. "java ReplayPlayer match-0-1700000000000.replay --speed=10 --resimulate".
+ * <p>
+ * The snapshots are decoded like the client does, and the deaths and the winner of every round are printed. The recording is played at --speed times
+ * real time, or as fast as possible without --speed. With --resimulate every round is also calculated again by a Simulation with the seed and the
+ * directions of the recording, and every tick is compared with the recorded snapshot. Any difference means the simulation isn't deterministic.
+ */
+public class ReplayPlayer implements GameConstants {
+    private static final double TOLERANCE = 1.0 / 64; // The snapshots are rounded to 1/32 pixel
+
+    private double speed; // How many times real time the recording is played. 0 means as fast as possible
+    private boolean resimulate;
+    private int mismatches; // Ticks where the Simulation didn't match the recording
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java ReplayPlayer <file> [--speed=<times real time>] [--resimulate]");
+            return;
+        }
+
+        ReplayPlayer player = new ReplayPlayer();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--speed="))
+                player.speed = Double.parseDouble(args[i].substring("--speed=".length()));
+            else if (args[i].equals("--resimulate"))
+                player.resimulate = true;
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            player.play(new DataInputStream(new BufferedInputStream(in, 64 * 1024)));
+        }
+    }
+
+    private void play(DataInputStream in) throws IOException {
+        if (in.readInt() != ReplayRecorder.MAGIC)
+            throw new IOException("Not a recording");
+        int version = in.readUnsignedByte();
+        if (version != ReplayRecorder.VERSION)
+            throw new IOException("Unsupported recording version " + version);
+
+        int numberOfPlayers = in.readUnsignedByte();
+        long seed = in.readLong();
+        int tickRate = in.readUnsignedShort();
+        System.out.println(numberOfPlayers + " players, seed " + seed + ", " + tickRate + " ticks per second");
+
+        Simulation simulation = resimulate ? new Simulation(numberOfPlayers, seed) : null;
+        SnapshotCodec.Decoder decoder = null;
+        int[] directions = new int[numberOfPlayers];
+        boolean[] deadPlayers = new boolean[numberOfPlayers];
+        byte[] snapshot = new byte[255];
+        int rounds = 0, ticks = 0, totalTicks = 0;
+        long start = System.nanoTime();
+
+        while (true) {
+            int type;
+            try {
+                type = in.readUnsignedByte();
+            } catch (EOFException e) {
+                break; // The end of the recording. A recording of a match that was still running ends in the middle of a round
+            }
+
+            if (type == ReplayRecorder.ROUND_START) {
+                decoder = new SnapshotCodec.Decoder(numberOfPlayers);
+                directions = new int[numberOfPlayers];
+                deadPlayers = new boolean[numberOfPlayers];
+                ticks = 0;
+                if (simulation != null)
+                    simulation.startRound();
+            } else if (type == ReplayRecorder.TICK) {
+                int changes = in.readUnsignedByte();
+                for (int i = 0; i < changes; i++) {
+                    int player = in.readUnsignedByte();
+                    directions[player] = in.readByte();
+                }
+
+                int length = in.readUnsignedByte();
+                in.readFully(snapshot, 0, length);
+                decoder.decode(new DataInputStream(new ByteArrayInputStream(snapshot, 0, length)));
+
+                for (int i = 0; i < numberOfPlayers; i++) {
+                    if (!deadPlayers[i] && decoder.isDead(i)) {
+                        deadPlayers[i] = true;
+                        System.out.printf("Round %d, tick %d: player %d died at (%.1f, %.1f)%n", rounds, ticks, i, decoder.getX(i), decoder.getY(i));
+                    }
+                }
+
+                if (simulation != null) {
+                    simulation.step(directions);
+                    compare(simulation.getState(), decoder, rounds, ticks);
+                }
+
+                ticks++;
+                totalTicks++;
+                if (speed > 0)
+                    waitUntil(start + (long) (totalTicks * 1_000_000_000L / tickRate / speed));
+            } else if (type == ReplayRecorder.ROUND_END) {
+                int winner = -1;
+                for (int i = 0; i < numberOfPlayers; i++)
+                    if (!deadPlayers[i])
+                        winner = i;
+                System.out.println("Round " + rounds++ + " over after " + ticks + " ticks. " + (winner == -1 ? "Draw" : "Player " + winner + " won"));
+            } else
+                throw new IOException("Unknown record type " + type);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d rounds, %d ticks played in %.3f s, %.0f times real time%n", rounds, totalTicks, seconds, totalTicks / (double) tickRate / seconds);
+        if (resimulate)
+            System.out.println(mismatches == 0 ? "The simulation matches the recording" : "The simulation differs from the recording in " + mismatches + " ticks");
+    }
+
+    private void compare(GameState state, SnapshotCodec.Decoder decoder, int round, int tick) {
+        for (int i = 0; i < state.getNumberOfPlayers(); i++) {
+            if (state.isDead(i) != decoder.isDead(i)
+                    || (!state.isDead(i) && (Math.abs(state.getX(i) - decoder.getX(i)) > TOLERANCE || Math.abs(state.getY(i) - decoder.getY(i)) > TOLERANCE))) {
+                if (mismatches++ == 0) // Only the first difference is shown. Every tick after it will usually differ too
+                    System.out.printf("Round %d, tick %d: player %d is at (%.3f, %.3f) in the simulation and at (%.3f, %.3f) in the recording%n",
+                            round, tick, i, state.getX(i), state.getY(i), decoder.getX(i), decoder.getY(i));
+                return;
+            }
+        }
+    }
+
+    private static void waitUntil(long time) {
+        long delay;
+        while ((delay = time - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
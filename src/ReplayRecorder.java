@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records the rounds of a match to a file, so they can be played again with the ReplayPlayer.
+ * <p>
+ * The file starts with a header: MAGIC (int), VERSION (byte), number of players (byte), seed (long) and tick rate (short). Then records follow, each starting with its type:
+ * ROUND_START, TICK and ROUND_END. A tick record has the changes of direction in the tick (count byte, then player byte and direction byte for each change)
+ * followed by the snapshot the players were sent (length byte, then the snapshot). The snapshots of a round are the deltas of SnapshotCodec, so the
+ * file is about as compact as the game stream, and the directions let the Simulation calculate the round again from the seed.
+ * <p>
+ * The engine writes the records into a buffer, which doesn't allocate or lock. A full buffer is handed to the writer thread, which writes it to a FileChannel
+ * and gives it back. If the disk is slow and no buffer is free, a new one is made, so the tick never waits for the disk.
+ */
+public class ReplayRecorder implements Runnable, GameConstants {
+    public static final int MAGIC = 0x52504C59; // "RPLY"
+    public static final int VERSION = 1; // Increment this when the format changes. The snapshots have their own version, see SnapshotCodec
+    public static final int ROUND_START = 1, TICK = 2, ROUND_END = 3; // The types of record
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_TICK_RECORD = 1 + 1 + 2 * MAXPLAYERS + 1 + 255; // The largest possible tick record. A buffer with less room than this is handed over
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0); // Tells the writer thread to close the file
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); // The buffer the engine writes to. Only used by the engine thread
+    private BlockingQueue<ByteBuffer> fullBuffers = new ArrayBlockingQueue<>(64), freeBuffers = new ArrayBlockingQueue<>(4);
+    private int[] lastDirections; // The directions of the last tick recorded. Only changes are recorded
+    private volatile boolean failed; // Set if the file can't be written or the disk can't keep up. Recording stops then
+
+    private ReplayRecorder(FileChannel channel, int numberOfPlayers) {
+        this.channel = channel;
+        lastDirections = new int[numberOfPlayers];
+    }
+
+    /**
+     * This method creates the file, writes the header and starts the writer thread
+     */
+    public static ReplayRecorder open(Path file, int numberOfPlayers, long seed, int tickRate) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ReplayRecorder recorder = new ReplayRecorder(channel, numberOfPlayers);
+        recorder.buffer.putInt(MAGIC).put((byte) VERSION).put((byte) numberOfPlayers).putLong(seed).putShort((short) tickRate);
+
+        Thread writer = new Thread(recorder, "Replay writer " + file.getFileName());
+        writer.setDaemon(true); // A recording must not keep the server running
+        writer.start();
+        return recorder;
+    }
+
+    public void startRound() {
+        room(1);
+        buffer.put((byte) ROUND_START);
+        for (int i = 0; i < lastDirections.length; i++)
+            lastDirections[i] = 0; // The players go straight when a round starts
+    }
+
+    /**
+     * This method records a tick: the directions the players had during the tick and the snapshot sent after it. The snapshot is copied, so it is only used during the call
+     */
+    public void recordTick(int[] directions, ByteBuffer snapshot) {
+        room(MAX_TICK_RECORD);
+        buffer.put((byte) TICK);
+
+        int countPosition = buffer.position();
+        int changes = 0;
+        buffer.put((byte) 0); // The number of changes is filled in below
+        for (int i = 0; i < directions.length; i++) {
+            if (directions[i] != lastDirections[i]) {
+                buffer.put((byte) i).put((byte) directions[i]);
+                lastDirections[i] = directions[i];
+                changes++;
+            }
+        }
+        buffer.put(countPosition, (byte) changes);
+
+        int length = snapshot.remaining();
+        buffer.put((byte) length);
+        buffer.put(buffer.position(), snapshot, snapshot.position(), length); // An absolute copy, so the position of the snapshot isn't changed, since it is also sent to the players
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * This method records the end of the round and hands the buffer to the writer thread, so the round is on disk soon after it ends
+     */
+    public void endRound() {
+        room(1);
+        buffer.put((byte) ROUND_END);
+        handOver();
+    }
+
+    /**
+     * This method writes what is left and closes the file. Nothing can be recorded after this
+     */
+    public void close() {
+        handOver();
+        fullBuffers.offer(CLOSE); // If the queue is full, the disk has fallen far behind and the file is left open until the server stops
+    }
+
+    // Hands the buffer to the writer thread if it has less room than needed
+    private void room(int needed) {
+        if (buffer.remaining() < needed)
+            handOver();
+    }
+
+    private void handOver() {
+        if (failed) {
+            buffer.clear(); // Nothing more is written, but the engine can go on recording into the buffer
+            return;
+        }
+        if (buffer.position() == 0)
+            return;
+
+        buffer.flip();
+        if (!fullBuffers.offer(buffer)) { // The writer thread is too far behind. Give up the recording instead of holding up the game
+            failed = true;
+            buffer.clear();
+            AsyncLogger.log("Replay recording stopped: the disk can't keep up");
+            return;
+        }
+
+        ByteBuffer free = freeBuffers.poll();
+        buffer = free != null ? free : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * This method runs on the writer thread. It writes the full buffers in the order they were handed over
+     */
+    @Override
+    public void run() {
+        try (FileChannel channel = this.channel) {
+            while (true) {
+                ByteBuffer full = fullBuffers.take();
+                if (full == CLOSE)
+                    return;
+
+                while (full.hasRemaining())
+                    channel.write(full);
+                full.clear();
+                freeBuffers.offer(full); // If there are enough spare buffers already, this one is left to the garbage collector
+            }
+        } catch (IOException e) {
+            failed = true;
+            AsyncLogger.log("Replay recording failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.OptionalLong;
+
+/**
+ * The options the server is started with. Options are given as program arguments on the form --name=value, e.g. "java GameServer --threads=virtual --tick-rate=60"
+ */
+public class ServerOptions {
+    public enum Transport {
+        BLOCKING, // Two threads per player, one for the game connection and one for the chat connection
+        NIO // A single thread serves all connections with a Selector
+    }
+
+    public enum SlowClientPolicy { // What happens to a message for a client whose outbound queue is full
+        COALESCE, // Queued snapshots are replaced by the latest one. Other messages are dropped
+        DROP, // The message is dropped
+        DISCONNECT // The message is dropped, and the client is disconnected if its queue stays full for the slow client timeout
+    }
+
+    private Transport transport = Transport.BLOCKING;
+    private boolean virtualThreads; // Whether the handlers of the blocking transport run on virtual threads instead of platform threads
+    private int tickRate = 40; // The number of times per second game info is calculated and sent. 40 gives the 25 ms between ticks the game was made for
+    private SlowClientPolicy slowClientPolicy = SlowClientPolicy.DISCONNECT;
+    private int slowClientTimeout = 2000; // In milliseconds
+    private boolean udpSnapshots; // Whether the snapshots are sent as UDP datagrams instead of on the game connection, see UdpTransport
+    private OptionalLong seed = OptionalLong.empty(); // The seed of the starting points of every match. Without it, every match gets a random seed
+    private Path recordDirectory; // Where the matches are recorded, see ReplayRecorder. Matches aren't recorded without it
+    private double udpLoss; // The fraction of datagrams the server throws away, to test how the game copes with packet loss
+    private double chatRate = 5; // The chat messages a player may send per second on average. Messages over the limit are dropped
+    private int chatBurst = 10; // The chat messages a player may send at once after a quiet while
+    private int metricsPort = 8080; // The port of the HTTP endpoint of the Metrics, only reachable from the same machine. 0 turns it off
+    private boolean mux; // Whether players may also connect to a single port that carries both the game and the chat, see MuxTransport
+    private int gamePort = 8000, chatPort = 9000, spectatorPort = 8001, muxPort = 8002; // The game port also receives the tokens of the UDP snapshots
+
+    public ServerOptions(String[] args) {
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2)
+                throw new IllegalArgumentException("Options must be written as --name=value: " + arg);
+
+            switch (option[0]) {
+                case "--tick-rate":
+                    tickRate = Integer.parseInt(option[1]);
+                    if (tickRate < 1 || tickRate > 1000)
+                        throw new IllegalArgumentException("The tick rate must be between 1 and 1000: " + tickRate);
+                    break;
+                case "--transport":
+                    transport = Transport.valueOf(option[1].toUpperCase());
+                    break;
+                case "--threads":
+                    if (!option[1].equals("virtual") && !option[1].equals("platform"))
+                        throw new IllegalArgumentException("Threads must be virtual or platform: " + option[1]);
+                    virtualThreads = option[1].equals("virtual");
+                    break;
+                case "--slow-client":
+                    slowClientPolicy = SlowClientPolicy.valueOf(option[1].toUpperCase());
+                    break;
+                case "--slow-client-timeout":
+                    slowClientTimeout = Integer.parseInt(option[1]);
+                    if (slowClientTimeout < 0)
+                        throw new IllegalArgumentException("The slow client timeout can't be negative: " + slowClientTimeout);
+                    break;
+                case "--snapshots":
+                    if (!option[1].equals("tcp") && !option[1].equals("udp"))
+                        throw new IllegalArgumentException("Snapshots must be sent with tcp or udp: " + option[1]);
+                    udpSnapshots = option[1].equals("udp");
+                    break;
+                case "--seed":
+                    seed = OptionalLong.of(Long.parseLong(option[1]));
+                    break;
+                case "--record":
+                    recordDirectory = Paths.get(option[1]);
+                    if (!Files.isDirectory(recordDirectory))
+                        throw new IllegalArgumentException("The record directory doesn't exist: " + option[1]);
+                    break;
+                case "--udp-loss":
+                    udpLoss = Double.parseDouble(option[1]);
+                    if (!(udpLoss >= 0 && udpLoss < 1))
+                        throw new IllegalArgumentException("The UDP loss must be at least 0 and less than 1: " + udpLoss);
+                    break;
+                case "--chat-rate":
+                    chatRate = Double.parseDouble(option[1]);
+                    if (!(chatRate > 0))
+                        throw new IllegalArgumentException("The chat rate must be more than 0: " + chatRate);
+                    break;
+                case "--chat-burst":
+                    chatBurst = Integer.parseInt(option[1]);
+                    if (chatBurst < 1)
+                        throw new IllegalArgumentException("The chat burst must be at least 1: " + chatBurst);
+                    break;
+                case "--metrics-port":
+                    metricsPort = Integer.parseInt(option[1]);
+                    if (metricsPort < 0 || metricsPort > 65535)
+                        throw new IllegalArgumentException("The metrics port must be between 0 and 65535: " + metricsPort);
+                    break;
+                case "--game-port":
+                    gamePort = parsePort("game", option[1]);
+                    break;
+                case "--chat-port":
+                    chatPort = parsePort("chat", option[1]);
+                    break;
+                case "--spectator-port":
+                    spectatorPort = parsePort("spectator", option[1]);
+                    break;
+                case "--mux-port":
+                    muxPort = parsePort("mux", option[1]);
+                    break;
+                case "--mux":
+                    if (!option[1].equals("true") && !option[1].equals("false"))
+                        throw new IllegalArgumentException("Mux must be true or false: " + option[1]);
+                    mux = option[1].equals("true");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0]);
+            }
+        }
+
+        if (virtualThreads && transport != Transport.BLOCKING)
+            throw new IllegalArgumentException("Virtual threads can only be used with the blocking transport");
+        if (udpLoss > 0 && !udpSnapshots)
+            throw new IllegalArgumentException("The UDP loss can only be simulated when the snapshots are sent with udp");
+    }
+
+    private static int parsePort(String name, String value) {
+        int port = Integer.parseInt(value);
+        if (port < 1 || port > 65535)
+            throw new IllegalArgumentException("The " + name + " port must be between 1 and 65535: " + port);
+        return port;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public boolean useVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    /**
+     * This method returns how long the outbound queue of a client may stay full before it is disconnected, in nanoseconds
+     */
+    public long getSlowClientTimeout() {
+        return slowClientTimeout * 1_000_000L;
+    }
+
+    public boolean useUdpSnapshots() {
+        return udpSnapshots;
+    }
+
+    public OptionalLong getSeed() {
+        return seed;
+    }
+
+    /**
+     * This method returns the directory the matches are recorded to, or null if they aren't recorded
+     */
+    public Path getRecordDirectory() {
+        return recordDirectory;
+    }
+
+    /**
+     * This method returns a new limit for the chat messages of a player
+     */
+    public TokenBucket newChatLimit() {
+        return new TokenBucket(chatRate, chatBurst);
+    }
+
+    /**
+     * This method returns the port of the HTTP endpoint of the metrics, or 0 if there is none
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public int getGamePort() {
+        return gamePort;
+    }
+
+    public int getChatPort() {
+        return chatPort;
+    }
+
+    public int getSpectatorPort() {
+        return spectatorPort;
+    }
+
+    /**
+     * This method returns the port of the MuxTransport. It is only opened with --mux=true
+     */
+    public int getMuxPort() {
+        return muxPort;
+    }
+
+    public boolean useMux() {
+        return mux;
+    }
+
+    public double getUdpLoss() {
+        return udpLoss;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * This method returns the time between ticks in nanoseconds
+     */
+    public long getTickPeriod() {
+        return 1_000_000_000L / tickRate;
+    }
+}
@@ -0,0 +1,57 @@
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Polyline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the game with a Polyline and a Circle per player. The nodes are added to the pane once per round, and every frame only adds new points
+ * to the polylines and moves the circles, so the scene graph isn't rebuilt every frame
+ */
+public class ShapeRenderer extends InterpolatingRenderer {
+    private Polyline[] polylines;
+    private Circle[] circles;
+
+    public ShapeRenderer(Pane pane, Color[] colors) {
+        super(pane, colors);
+    }
+
+    @Override
+    protected void showRound(int numberOfPlayers) {
+        polylines = new Polyline[numberOfPlayers];
+        circles = new Circle[numberOfPlayers];
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            polylines[i] = new Polyline();
+            polylines[i].setStroke(colors[i]);
+            polylines[i].setStrokeWidth(STROKE_WIDTH);
+            nodes.add(polylines[i]);
+        }
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            circles[i] = new Circle(RADIUS, Color.YELLOW);
+            nodes.add(circles[i]); // The circles are added last, so they are drawn on top of all lines
+        }
+
+        pane.getChildren().setAll(nodes);
+    }
+
+    @Override
+    protected void drawTrails(List<List<Double>> newPoints) {
+        for (int i = 0; i < newPoints.size(); i++)
+            if (!newPoints.get(i).isEmpty())
+                polylines[i].getPoints().addAll(newPoints.get(i)); // A single change, however many points there are
+    }
+
+    @Override
+    protected void drawHeads(double[] xCoordinates, double[] yCoordinates) {
+        for (int i = 0; i < circles.length; i++) {
+            circles[i].setCenterX(xCoordinates[i]);
+            circles[i].setCenterY(yCoordinates[i]);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Random;
+
+/**
+ * The rules of the game: where the players start, how they move and when they die. Used by the GameEngine, which adds the timing, the inputs and the network.
+ * <p>
+ * The simulation is deterministic. The starting points come from a Random with a seed, the positions are fixed-point numbers moved by Movement,
+ * and the collisions are checked in the same order every time. Two simulations with the same seed and number of players that are given
+ * the same directions in the same ticks end up in the same state, so a game can be reproduced from its seed and its inputs.
+ */
+public class Simulation implements GameConstants {
+    private int numberOfPlayers;
+    private Random random; // java.util.Random gives the same numbers for the same seed on every JVM
+    private boolean[] deadPlayers;
+    private int[] xPositions, yPositions; // Fixed-point, see Movement
+    private double[] xCoordinates, yCoordinates; // The positions in pixels, for the trails and the collisions
+    private int[] angles;
+    private String[] causesOfDeath;
+    private int[] deathTicks; // The tick every player died in, or -1 if he is alive
+    private Trail[] trails;
+    private TrailGrid trailGrid; // Spatial index of the segments of all trails. Used for checking whether a player hit a line
+    private int ticks; // The number of ticks since the round started
+
+    public Simulation(int numberOfPlayers, long seed) {
+        this.numberOfPlayers = numberOfPlayers;
+        random = new Random(seed);
+        deadPlayers = new boolean[numberOfPlayers];
+        xPositions = new int[numberOfPlayers];
+        yPositions = new int[numberOfPlayers];
+        xCoordinates = new double[numberOfPlayers];
+        yCoordinates = new double[numberOfPlayers];
+        angles = new int[numberOfPlayers];
+        causesOfDeath = new String[numberOfPlayers];
+        deathTicks = new int[numberOfPlayers];
+        trails = new Trail[numberOfPlayers];
+        for (int i = 0; i < numberOfPlayers; i++)
+            trails[i] = new Trail();
+        trailGrid = new TrailGrid(trails);
+    }
+
+    /**
+     * This method brings every player back to life at a new starting point. The starting points of a round depend on the seed and the rounds before it
+     */
+    public void startRound() {
+        for (int i = 0; i < numberOfPlayers; i++) {
+            setPosition(i, Movement.toFixed(100 + random.nextInt(WIDTH - 200)), Movement.toFixed(100 + random.nextInt(HEIGHT - 200))); // Make sure the player can turn if he is facing a side
+            angles[i] = random.nextInt(360); // Pick a random starting angle
+            deadPlayers[i] = false;
+            causesOfDeath[i] = null;
+            deathTicks[i] = -1;
+            trails[i].clear(); // Reuse the trails of the last round
+        }
+
+        trailGrid.clear();
+        ticks = 0;
+    }
+
+    /**
+     * This method calculates one tick. The directions (-1, 0 or 1) are those of the players during the tick
+     */
+    public void step(int[] directions) {
+        move(directions);
+        checkForDeadPlayers();
+    }
+
+    /**
+     * This method moves the players for one tick, without checking whether they hit anything. It must be followed by checkForDeadPlayers.
+     * The two are separate so the GameEngine can time them separately
+     */
+    public void move(int[] directions) {
+        // Add previous coordinates to trails, which trace after the player
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (!deadPlayers[i]) {
+                trails[i].add(xCoordinates[i], yCoordinates[i]);
+                trailGrid.addNewestSegment((byte) i);
+            }
+        }
+
+        // Calculate new coordinates for all players
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (!deadPlayers[i]) {
+                angles[i] = Movement.turn(angles[i], directions[i]); // Add the change in degrees to the angle
+                setPosition(i, Movement.moveX(xPositions[i], angles[i]), Movement.moveY(yPositions[i], angles[i]));
+            }
+        }
+
+        ticks++;
+    }
+
+    private void setPosition(int player, int x, int y) {
+        xPositions[player] = x;
+        yPositions[player] = y;
+        xCoordinates[player] = Movement.toPixels(x);
+        yCoordinates[player] = Movement.toPixels(y);
+    }
+
+    public void checkForDeadPlayers() {
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (!deadPlayers[i]) { // Only check if the player isn't already dead
+                if (xCoordinates[i] < RADIUS || xCoordinates[i] > WIDTH - RADIUS)
+                    die(i, "hit the right or left side");
+                else if (yCoordinates[i] < RADIUS || yCoordinates[i] > HEIGHT - RADIUS)
+                    die(i, "hit the top or the bottom side");
+                else {
+                    int owner = trailGrid.findOwner((byte) i, xCoordinates[i], yCoordinates[i]); // Only the segments near the player are checked
+                    if (owner != -1)
+                        die(i, "collided with the line of player " + owner);
+                }
+            }
+        }
+    }
+
+    private void die(int player, String cause) {
+        deadPlayers[player] = true;
+        causesOfDeath[player] = cause;
+        deathTicks[player] = ticks - 1;
+    }
+
+    /**
+     * This method returns the state after the last tick calculated. The state of the first tick of a round is tick 0
+     */
+    public GameState getState() {
+        return new GameState(ticks - 1, deadPlayers, xCoordinates, yCoordinates, angles);
+    }
+
+    /**
+     * This method returns the number of ticks calculated in the round, which is also the tick the next call to step calculates
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    public boolean isDead(int player) {
+        return deadPlayers[player];
+    }
+
+    /**
+     * This method returns whether the player died in the last tick calculated
+     */
+    public boolean hasJustDied(int player) {
+        return deadPlayers[player] && deathTicks[player] == ticks - 1;
+    }
+
+    /**
+     * This method returns why the player died, e.g. "hit the top or the bottom side", or null if he is alive
+     */
+    public String getCauseOfDeath(int player) {
+        return causesOfDeath[player];
+    }
+
+    public int getNumberOfPlayersAlive() {
+        int counter = 0;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (!deadPlayers[i])
+                counter++;
+        }
+        return counter;
+    }
+
+    /**
+     * This method returns whether the round is over: when 1 or 0 players are alive, or when the only player is dead
+     */
+    public boolean isRoundOver() {
+        int numberOfPlayersAlive = getNumberOfPlayersAlive();
+        return numberOfPlayers > 1 ? numberOfPlayersAlive <= 1 : numberOfPlayersAlive == 0;
+    }
+}
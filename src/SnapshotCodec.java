@@ -0,0 +1,183 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The wire format of the game info sent to the players every tick. Used by both the server (Encoder) and the client (Decoder).
+ * <p>
+ * Every snapshot starts with a header byte (version in the upper 4 bits, type in the lower 4 bits), followed by the tick number (short) and a bitmask
+ * of the dead players (1 bit per player). Then the coordinates of every player that wasn't dead in the previous snapshot follow.
+ * Coordinates are fixed-point numbers with 5 fraction bits. A keyframe contains the coordinates and the angle (in degrees) as shorts, a delta contains the change since the
+ * previous snapshot as signed bytes. A player moves at most SPEED pixels and turns at most Movement.TURN_DEGREES per tick, so the change always fits in a byte.
+ * The angle lets the client predict where its own player moves next, see Predictor.
+ * <p>
+ * Both sides keep the same state: the last coordinates and which players are dead. This is why a decoder must receive every snapshot from the start of the round,
+ * or a full snapshot. A full snapshot contains the coordinates of all players, dead or alive, and is sent to a client that has missed a snapshot.
+ */
+public class SnapshotCodec implements GameConstants {
+    public static final int VERSION = 3; // Increment this when the format changes
+    public static final int KEYFRAME = 1, DELTA = 2, FULL = 3; // The types of snapshot
+    public static final int KEYFRAME_INTERVAL = 20; // A keyframe is sent every 20 ticks, which limits how far rounding can make the coordinates drift
+    private static final double SCALE = 32; // 5 fraction bits. WIDTH * SCALE still fits in a short
+
+    private static short quantize(double coordinate) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(coordinate * SCALE)));
+    }
+
+    /**
+     * This method writes a full snapshot of the state. The decoder needs no earlier snapshots to decode it, and after it the decoder has the same state
+     * as after the snapshot the Encoder wrote for the same tick
+     */
+    public static void encodeFull(DataOutput out, GameState state) throws IOException {
+        out.writeByte(VERSION << 4 | FULL);
+        out.writeShort(state.getTick());
+        writeDeadPlayers(out, state);
+
+        for (int i = 0; i < state.getNumberOfPlayers(); i++) {
+            out.writeShort(quantize(state.getX(i)));
+            out.writeShort(quantize(state.getY(i)));
+            out.writeShort(state.getAngle(i));
+        }
+    }
+
+    private static void writeDeadPlayers(DataOutput out, GameState state) throws IOException {
+        for (int i = 0; i < state.getNumberOfPlayers(); i += 8) { // Pack the dead/alive status of 8 players in each byte
+            int mask = 0;
+            for (int j = i; j < Math.min(i + 8, state.getNumberOfPlayers()); j++)
+                if (state.isDead(j))
+                    mask |= 1 << (j - i);
+            out.writeByte(mask);
+        }
+    }
+
+    // The change from one angle to another, between -180 and 179
+    private static int turnBetween(int from, int to) {
+        return Math.floorMod(to - from + 180, 360) - 180;
+    }
+
+    public static class Encoder {
+        private int numberOfPlayers;
+        private short[] xCoordinates, yCoordinates; // The coordinates the decoder has, i.e. the ones sent in the last snapshot
+        private int[] angles;
+        private boolean[] deadPlayers; // The players the decoder knows are dead
+        private boolean started; // Whether a snapshot has been encoded. The first one is always a keyframe
+
+        public Encoder(int numberOfPlayers) {
+            this.numberOfPlayers = numberOfPlayers;
+            xCoordinates = new short[numberOfPlayers];
+            yCoordinates = new short[numberOfPlayers];
+            angles = new int[numberOfPlayers];
+            deadPlayers = new boolean[numberOfPlayers];
+        }
+
+        public void encode(DataOutput out, GameState state) throws IOException {
+            boolean keyframe = !started || state.getTick() % KEYFRAME_INTERVAL == 0;
+            for (int i = 0; i < numberOfPlayers && !keyframe; i++) // Send a keyframe if a change doesn't fit in a byte, e.g. because of a teleport
+                if (!deadPlayers[i] && (Math.abs(quantize(state.getX(i)) - xCoordinates[i]) > Byte.MAX_VALUE || Math.abs(quantize(state.getY(i)) - yCoordinates[i]) > Byte.MAX_VALUE
+                        || Math.abs(turnBetween(angles[i], state.getAngle(i))) > Byte.MAX_VALUE))
+                    keyframe = true;
+            started = true;
+
+            out.writeByte(VERSION << 4 | (keyframe ? KEYFRAME : DELTA));
+            out.writeShort(state.getTick());
+            writeDeadPlayers(out, state);
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                if (!deadPlayers[i]) { // Coordinates are sent one more time when a player dies and then not anymore
+                    short x = quantize(state.getX(i)), y = quantize(state.getY(i));
+
+                    if (keyframe) {
+                        out.writeShort(x);
+                        out.writeShort(y);
+                        out.writeShort(state.getAngle(i));
+                    } else {
+                        out.writeByte(x - xCoordinates[i]);
+                        out.writeByte(y - yCoordinates[i]);
+                        out.writeByte(turnBetween(angles[i], state.getAngle(i)));
+                    }
+
+                    xCoordinates[i] = x;
+                    yCoordinates[i] = y;
+                    angles[i] = state.getAngle(i);
+                    deadPlayers[i] = state.isDead(i);
+                }
+            }
+        }
+    }
+
+    public static class Decoder {
+        private int numberOfPlayers;
+        private short[] xCoordinates, yCoordinates;
+        private int[] angles;
+        private boolean[] deadPlayers, newDeadPlayers;
+        private short tick;
+
+        public Decoder(int numberOfPlayers) {
+            this.numberOfPlayers = numberOfPlayers;
+            xCoordinates = new short[numberOfPlayers];
+            yCoordinates = new short[numberOfPlayers];
+            angles = new int[numberOfPlayers];
+            deadPlayers = new boolean[numberOfPlayers];
+            newDeadPlayers = new boolean[numberOfPlayers];
+        }
+
+        /**
+         * This method reads one snapshot and updates the coordinates and dead/alive status of every player that wasn't dead already
+         */
+        public void decode(DataInput in) throws IOException {
+            int header = in.readUnsignedByte();
+            if (header >> 4 != VERSION)
+                throw new IOException("Unsupported snapshot version " + (header >> 4));
+            int type = header & 0xF;
+
+            tick = in.readShort();
+
+            for (int i = 0; i < numberOfPlayers; i += 8) {
+                int mask = in.readUnsignedByte();
+                for (int j = i; j < Math.min(i + 8, numberOfPlayers); j++)
+                    newDeadPlayers[j] = (mask & 1 << (j - i)) != 0;
+            }
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                if (type == FULL) { // Everything is replaced, in case a snapshot was missed
+                    xCoordinates[i] = in.readShort();
+                    yCoordinates[i] = in.readShort();
+                    angles[i] = in.readShort();
+                    deadPlayers[i] = newDeadPlayers[i];
+                } else if (!deadPlayers[i]) {
+                    if (type == KEYFRAME) {
+                        xCoordinates[i] = in.readShort();
+                        yCoordinates[i] = in.readShort();
+                        angles[i] = in.readShort();
+                    } else {
+                        xCoordinates[i] += in.readByte();
+                        yCoordinates[i] += in.readByte();
+                        angles[i] = Math.floorMod(angles[i] + in.readByte(), 360);
+                    }
+
+                    deadPlayers[i] = newDeadPlayers[i];
+                }
+            }
+        }
+
+        public short getTick() {
+            return tick;
+        }
+
+        public boolean isDead(int player) {
+            return deadPlayers[player];
+        }
+
+        public double getX(int player) {
+            return xCoordinates[player] / SCALE;
+        }
+
+        public double getY(int player) {
+            return yCoordinates[player] / SCALE;
+        }
+
+        public int getAngle(int player) {
+            return angles[player];
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free ring buffer of decoded snapshots, written by one thread (the network thread) and read by one other thread (the FX thread).
+ * The slots are allocated once, so passing a snapshot from one thread to the other allocates nothing.
+ * <p>
+ * The writer claims a slot, fills it and publishes it. The reader peeks at the oldest published slot and pops it when it is done with it.
+ * A slot is only reused when the reader has popped it.
+ */
+public class SnapshotRing {
+    private final Slot[] slots;
+    private final int mask; // The capacity is a power of two, so the index of a slot is the sequence number & mask
+    private final AtomicLong written = new AtomicLong(), read = new AtomicLong(); // The number of slots published and popped so far
+
+    public SnapshotRing(int capacity, int numberOfPlayers) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++)
+            slots[i] = new Slot(numberOfPlayers);
+        mask = capacity - 1;
+    }
+
+    /**
+     * This method returns the slot to fill in next, or null if the ring is full. Only called by the writer
+     */
+    public Slot claim() {
+        long next = written.get();
+        return next - read.get() == slots.length ? null : slots[(int) (next & mask)];
+    }
+
+    /**
+     * This method makes the claimed slot visible to the reader. Only called by the writer
+     */
+    public void publish() {
+        written.setRelease(written.get() + 1); // Release, so the contents of the slot are visible before the slot is
+    }
+
+    /**
+     * This method returns the oldest slot that hasn't been popped, or null if there is none. Only called by the reader
+     */
+    public Slot peek() {
+        long next = read.get();
+        return next == written.getAcquire() ? null : slots[(int) (next & mask)];
+    }
+
+    /**
+     * This method gives the slot returned by peek back to the writer. Only called by the reader
+     */
+    public void pop() {
+        read.setRelease(read.get() + 1); // Release, so the reader is done with the slot before the writer can reuse it
+    }
+
+    public static class Slot {
+        public int tick;
+        public final boolean[] deadPlayers;
+        public final double[] xCoordinates, yCoordinates;
+
+        Slot(int numberOfPlayers) {
+            deadPlayers = new boolean[numberOfPlayers];
+            xCoordinates = new double[numberOfPlayers];
+            yCoordinates = new double[numberOfPlayers];
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the spectators, who watch a match without playing in it. All spectators are served by a single thread with a Selector, whichever transport the players use.
+ * <p>
+ * A spectator gets the same messages as a player, so the client can show the game, but its ID is -1 and it never sends anything. It watches the newest match
+ * that has started, or the open match if none has.
+ * A spectator who connects before any player has joined watches the first match. Spectators are kept apart from the players, so they don't count when the match decides whether everyone is ready.
+ * <p>
+ * The snapshot of a tick is copied once into a read-only direct buffer shared by all spectators. Every spectator queues a duplicate of it, which shares the bytes,
+ * so a spectator costs a queue entry and a write per tick. The buffer is direct because the JDK copies a heap buffer into a temporary direct buffer on every write. The engine only queues the snapshots. The writes are done by the thread of the hub.
+ * A spectator that falls MAX_QUEUED messages behind misses snapshots, and gets a full snapshot when it has caught up or when the round ends.
+ */
+public class SpectatorHub implements Runnable {
+    private static final int MAX_QUEUED = 64; // The number of messages a spectator may have waiting. About 1.5 seconds of snapshots at the default tick rate
+    private static final byte SPECTATOR_ID = -1;
+    private static final int BACKLOG = 512; // Many spectators may connect at once, e.g. when a match is announced
+
+    private GameServer gameServer;
+    private int port;
+    private Selector selector;
+    private Queue<Spectator> pendingWrites = new ConcurrentLinkedQueue<>(); // Spectators with new messages since the hub last wrote to them
+    private AtomicBoolean awake = new AtomicBoolean(); // Whether the selector has been woken up and hasn't handled pendingWrites yet. The engine then wakes it only once per tick
+
+    public SpectatorHub(GameServer gameServer, int port) {
+        this.gameServer = gameServer;
+        this.port = port;
+    }
+
+    /**
+     * This method copies a message into a direct buffer that can be shared by all spectators. The message is only used during the call
+     */
+    static ByteBuffer share(ByteBuffer message) {
+        ByteBuffer shared = ByteBuffer.allocateDirect(message.remaining());
+        shared.put(message.duplicate()).flip();
+        return shared.asReadOnlyBuffer();
+    }
+
+    @Override
+    public void run() {
+        try {
+            selector = Selector.open();
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            AsyncLogger.log("Spectator server started at " + new Date());
+
+            while (true) {
+                selector.select();
+
+                for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable())
+                        accept(serverChannel);
+                    else {
+                        Spectator spectator = (Spectator) key.attachment();
+                        if (key.isReadable())
+                            spectator.read();
+                        if (key.isValid() && key.isWritable())
+                            spectator.write();
+                    }
+                }
+
+                awake.set(false); // Spectators added to pendingWrites after this wake the selector again
+                Spectator spectator;
+                while ((spectator = pendingWrites.poll()) != null)
+                    spectator.write();
+            }
+        } catch (IOException e) {
+            AsyncLogger.log("Spectator server stopped", e);
+        }
+    }
+
+    /**
+     * This method accepts all waiting spectators. A failure only affects the spectator being accepted, like a failed read or write, so the hub keeps serving the others.
+     * If the server runs out of file descriptors, the accept is tried again when the selector next wakes up
+     */
+    private void accept(ServerSocketChannel serverChannel) {
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null)
+                    return; // No more spectators waiting
+
+                channel.configureBlocking(false);
+                Spectator spectator = new Spectator(channel);
+                Match match = gameServer.getMatchToWatch();
+                match.addSpectator(spectator);
+                match.log("Spectator joined. Connection from " + channel.getRemoteAddress() + " at " + new Date());
+            } catch (IOException e) {
+                AsyncLogger.log("Accepting a spectator failed", e);
+                if (channel == null)
+                    return; // The accept itself failed, e.g. "Too many open files". Trying again right away would fail the same way
+                try {
+                    channel.close();
+                } catch (IOException closeFailure) {
+                    AsyncLogger.log("Closing the connection failed", closeFailure);
+                }
+            }
+        }
+    }
+
+    /**
+     * A connection to a spectator. The messages are queued by the engine and the lobby without locking, and only the thread of the hub writes them,
+     * so the engine never waits for the hub while it fans out a snapshot
+     */
+    class Spectator {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(64); // Spectators don't send anything, but reading tells when they have closed the connection
+        private Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>(); // Messages waiting to be written. The first one may have been written in part
+        private AtomicInteger queued = new AtomicInteger(); // The size of the queue, which ConcurrentLinkedQueue can't tell without counting
+        private AtomicBoolean pending = new AtomicBoolean(); // Whether the spectator is in pendingWrites
+        private boolean resync = true; // Whether the next snapshot must be a full snapshot. The first one must be, since the spectator may join in the middle of a round. Only used by the engine
+        private volatile boolean finishing; // Whether the connection is closed when the queue is empty
+        private volatile boolean closed; // Only set by the thread of the hub
+        private volatile int dropped; // Snapshots dropped because the spectator couldn't keep up. Only changed by the engine
+        private Match match;
+
+        Spectator(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * This method is called when the spectator has been added to a match. The messages sent before it tell the spectator what has happened in the lobby
+         */
+        void joinMatch(Match match) {
+            this.match = match;
+            send(ByteBuffer.wrap(new byte[]{SPECTATOR_ID}));
+        }
+
+        void sendNumberOfPlayers(byte numberOfPlayers) {
+            send(ByteBuffer.wrap(new byte[]{0, numberOfPlayers}));
+        }
+
+        void sendPlayerReady(byte playerId) {
+            send(ByteBuffer.wrap(new byte[]{1, playerId}));
+        }
+
+        void sendAllReady(int tickRate) {
+            send(ByteBuffer.allocate(7).put((byte) 2).putShort((short) tickRate).putInt(0).flip()); // The snapshots are sent on this connection, so the UDP token is 0
+        }
+
+        /**
+         * This method queues the snapshot of a tick. It is called by the engine. Both buffers must have been made by share, since they are kept until they have been written
+         */
+        void sendSnapshot(ByteBuffer sharedSnapshot, ByteBuffer sharedFullSnapshot) {
+            if (closed || finishing)
+                return;
+
+            if (queued.get() >= MAX_QUEUED) {
+                resync = true; // The spectator can't keep up. The snapshot is dropped, so the next one must be full
+                dropped++;
+                return;
+            }
+
+            send((resync ? sharedFullSnapshot : sharedSnapshot).duplicate()); // A duplicate has its own position but shares the bytes
+            resync = false;
+        }
+
+        /**
+         * This method is called by the engine after the last snapshot of a round. If the spectator has dropped snapshots since the last one it got, it gets the full snapshot
+         * of the last tick even if its queue is full, since nothing else would show it how the round ended
+         */
+        void sendRoundOver(ByteBuffer sharedFullSnapshot) {
+            if (!resync)
+                return;
+
+            send(sharedFullSnapshot.duplicate());
+            resync = false;
+        }
+
+        private void send(ByteBuffer message) {
+            if (closed || finishing)
+                return;
+
+            queue.add(message);
+            queued.incrementAndGet();
+            wakeUp();
+        }
+
+        // Makes sure the hub writes the new messages. The selector is woken up once for all the spectators of a tick
+        private void wakeUp() {
+            if (pending.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                if (awake.compareAndSet(false, true))
+                    selector.wakeup();
+            }
+        }
+
+        /**
+         * This method closes the connection once everything queued has been written, e.g. when the game is over
+         */
+        void finish() {
+            finishing = true;
+            wakeUp();
+        }
+
+        void read() {
+            try {
+                in.clear();
+                if (channel.read(in) == -1)
+                    throw new EOFException();
+            } catch (IOException e) {
+                close(e.toString());
+            }
+        }
+
+        /**
+         * This method writes the queued messages. It is only called by the thread of the hub
+         */
+        void write() {
+            pending.set(false); // Messages queued after this are written by the next call
+            if (closed)
+                return;
+
+            try {
+                ByteBuffer message;
+                while ((message = queue.peek()) != null) {
+                    channel.write(message);
+                    if (message.hasRemaining())
+                        break; // The socket is full
+                    queue.poll();
+                    queued.decrementAndGet();
+                }
+
+                if (message == null && finishing) {
+                    close("Game over");
+                    return;
+                }
+                key.interestOps(message == null ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE); // Let the selector say when there's room for the rest
+            } catch (IOException e) {
+                close(e.toString());
+            }
+        }
+
+        // Only called by the thread of the hub
+        private void close(String reason) {
+            if (closed)
+                return;
+
+            closed = true;
+            queue.clear();
+            AsyncLogger.log("Spectator connection from " + channel.socket().getRemoteSocketAddress() + " closed: " + reason + ". Snapshots dropped: " + dropped);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                AsyncLogger.log("Closing the connection failed", e);
+            }
+            if (match != null)
+                match.removeSpectator(this);
+        }
+    }
+}
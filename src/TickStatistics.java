@@ -0,0 +1,51 @@
+/**
+ * Histograms of how long the parts of a tick take. Dumping them shows how much headroom there is before ticks start running late
+ */
+public class TickStatistics {
+    private final long tickPeriod;
+    private final LatencyHistogram compute = new LatencyHistogram("compute");
+    private final LatencyHistogram collision = new LatencyHistogram("collision");
+    private final LatencyHistogram broadcast = new LatencyHistogram("broadcast");
+    private final LatencyHistogram total = new LatencyHistogram("total");
+    private final TickStatistics serverStatistics; // The statistics of all matches, which every tick is also recorded in, or null
+
+    public TickStatistics(long tickPeriod) {
+        this(tickPeriod, null);
+    }
+
+    public TickStatistics(long tickPeriod, TickStatistics serverStatistics) {
+        this.tickPeriod = tickPeriod;
+        this.serverStatistics = serverStatistics;
+    }
+
+    public void record(long computeNanos, long collisionNanos, long broadcastNanos) {
+        compute.record(computeNanos);
+        collision.record(collisionNanos);
+        broadcast.record(broadcastNanos);
+        total.record(computeNanos + collisionNanos + broadcastNanos);
+        if (serverStatistics != null)
+            serverStatistics.record(computeNanos, collisionNanos, broadcastNanos);
+    }
+
+    /**
+     * This method logs the histograms with the given title and resets them, so every dump covers the ticks since the last one
+     */
+    public void dump(String title) {
+        StringBuilder text = new StringBuilder(title + ": tick times (tick period " + tickPeriod / 1000 + "us):");
+        for (LatencyHistogram histogram : new LatencyHistogram[]{compute, collision, broadcast, total}) {
+            text.append(System.lineSeparator()).append("  ").append(histogram);
+            histogram.reset();
+        }
+        AsyncLogger.log(text.toString()); // One entry, so the lines of different matches aren't mixed
+    }
+
+    /**
+     * This method shows the histograms in the metrics, as e.g. tick_total_p99_us
+     */
+    public void register(Metrics metrics) {
+        metrics.histogram("tick_compute", compute);
+        metrics.histogram("tick_collision", collision);
+        metrics.histogram("tick_broadcast", broadcast);
+        metrics.histogram("tick_total", total);
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Limits how often something may happen: a token is taken every time, and tokens come back at a fixed rate up to a burst.
+ * Used to limit the chat messages of every sender, so a chatty client can't flood his match.
+ * <p>
+ * Not thread safe. A bucket belongs to one connection, and is only used by the thread that reads from it.
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst; // The most tokens the bucket can hold, i.e. how many messages can be sent at once after a quiet while
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        tokensPerNano = tokensPerSecond / 1e9;
+        this.burst = burst;
+        tokens = burst; // A new sender may send a burst right away
+    }
+
+    /**
+     * This method takes a token and returns true, or returns false if the bucket is empty
+     */
+    public boolean tryTake() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+
+        if (tokens < 1)
+            return false;
+        tokens--;
+        return true;
+    }
+}
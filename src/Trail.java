@@ -0,0 +1,46 @@
+import java.util.Arrays;
+
+/**
+ * The line trailing a player, stored as a growable array of primitive coordinates.
+ * <p>
+ * This replaces the JavaFX Polyline on the server, so no scene graph nodes or boxed Doubles are created for every point.
+ */
+public class Trail {
+    private float[] points = new float[512]; // x and y of every point after each other
+    private int size; // The number of points
+
+    public void add(double x, double y) {
+        if (size * 2 == points.length)
+            points = Arrays.copyOf(points, points.length * 2);
+
+        points[size * 2] = (float) x;
+        points[size * 2 + 1] = (float) y;
+        size++;
+    }
+
+    public float getX(int index) {
+        return points[index * 2];
+    }
+
+    public float getY(int index) {
+        return points[index * 2 + 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This method returns the number of segments, i.e. lines between two points after each other
+     */
+    public int getNumberOfSegments() {
+        return Math.max(0, size - 1);
+    }
+
+    /**
+     * This method removes all points. The array is kept, so it doesn't have to grow again next round
+     */
+    public void clear() {
+        size = 0;
+    }
+}
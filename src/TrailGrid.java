@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the playing field that indexes the segments of every trail.
+ * <p>
+ * Every segment is stored in all the cells it can be hit from, so the front of a player only has to be checked against the segments in its own cell.
+ * This keeps the cost of a collision check constant no matter how long the trails get.
+ */
+public class TrailGrid implements GameConstants {
+    private static final int CELL_SIZE = 20; // Width and height of a cell in pixels. Must be a lot larger than the length of a segment (SPEED)
+    private static final int COLUMNS = (WIDTH + CELL_SIZE - 1) / CELL_SIZE;
+    private static final int ROWS = (HEIGHT + CELL_SIZE - 1) / CELL_SIZE;
+    private static final double HIT_DISTANCE = STROKE_WIDTH / 2.0 + RADIUS; // The circle at the front of a player hits a segment if it gets closer than this
+    private static final int OWN_SEGMENTS_SKIPPED = (int) Math.ceil(HIT_DISTANCE / SPEED) + 1; // The newest segments of a player's own trail are always within reach of the circle, so they are skipped
+
+    private Trail[] trails;
+    private int[][] segments = new int[COLUMNS * ROWS][]; // The owner (upper 8 bits) and segment index (lower 24 bits) of each segment in a cell
+    private int[] counts = new int[COLUMNS * ROWS]; // The number of segments in each cell
+
+    public TrailGrid(Trail[] trails) {
+        this.trails = trails;
+    }
+
+    /**
+     * This method indexes the newest segment of the trail of the given player. Call it every time a point is added to the trail
+     */
+    public void addNewestSegment(byte owner) {
+        Trail trail = trails[owner];
+        int segment = trail.getNumberOfSegments() - 1;
+        if (segment < 0)
+            return;
+
+        float x1 = trail.getX(segment), y1 = trail.getY(segment), x2 = trail.getX(segment + 1), y2 = trail.getY(segment + 1);
+        int minColumn = column(Math.min(x1, x2) - HIT_DISTANCE);
+        int maxColumn = column(Math.max(x1, x2) + HIT_DISTANCE);
+        int minRow = row(Math.min(y1, y2) - HIT_DISTANCE);
+        int maxRow = row(Math.max(y1, y2) + HIT_DISTANCE);
+
+        for (int row = minRow; row <= maxRow; row++)
+            for (int column = minColumn; column <= maxColumn; column++)
+                add(row * COLUMNS + column, owner << 24 | segment);
+    }
+
+    /**
+     * This method returns the player whose trail is hit by the circle at the front of the given player at (x, y), or -1 if no trail is hit
+     */
+    public int findOwner(byte player, double x, double y) {
+        int cell = row(y) * COLUMNS + column(x);
+        int[] cellSegments = segments[cell];
+
+        for (int i = 0; i < counts[cell]; i++) {
+            int owner = cellSegments[i] >>> 24;
+            int segment = cellSegments[i] & 0xFFFFFF;
+            Trail trail = trails[owner];
+
+            if (owner == player && segment >= trail.getNumberOfSegments() - OWN_SEGMENTS_SKIPPED)
+                continue;
+
+            if (distanceSquared(x, y, trail.getX(segment), trail.getY(segment), trail.getX(segment + 1), trail.getY(segment + 1)) < HIT_DISTANCE * HIT_DISTANCE)
+                return owner;
+        }
+
+        return -1;
+    }
+
+    /**
+     * This method removes all segments. The cell arrays are kept, so they don't have to grow again next round
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    private void add(int cell, int segment) {
+        int count = counts[cell];
+
+        if (segments[cell] == null)
+            segments[cell] = new int[8];
+        else if (count == segments[cell].length) // Double the capacity of a full cell
+            segments[cell] = Arrays.copyOf(segments[cell], count * 2);
+
+        segments[cell][count] = segment;
+        counts[cell] = count + 1;
+    }
+
+    // Points outside the field are clamped to the cells along the sides
+    private static int column(double x) {
+        return Math.max(0, Math.min(COLUMNS - 1, (int) (x / CELL_SIZE)));
+    }
+
+    private static int row(double y) {
+        return Math.max(0, Math.min(ROWS - 1, (int) (y / CELL_SIZE)));
+    }
+
+    // The squared distance from the point (x, y) to the segment between (x1, y1) and (x2, y2)
+    private static double distanceSquared(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared; // Project the point onto the segment
+        t = Math.max(0, Math.min(1, t));
+        double closestX = x1 + t * dx - x, closestY = y1 + t * dy - y;
+        return closestX * closestX + closestY * closestY;
+    }
+}
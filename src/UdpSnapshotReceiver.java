@@ -0,0 +1,90 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+
+/**
+ * Receives the snapshots the server sends as UDP datagrams, see UdpTransport. Used by the client instead of reading the snapshots from the game connection.
+ * <p>
+ * Every datagram is a full snapshot, so a lost datagram only means that a tick is skipped. A datagram of an earlier round, or of a tick that isn't newer
+ * than the last one used, is thrown away. Such a datagram is late, or it is a repeat of the last datagram of a round.
+ */
+public class UdpSnapshotReceiver {
+    private static final int HELLO_INTERVAL = 250; // How often the token is sent while no datagrams arrive, in milliseconds
+
+    private DatagramSocket socket;
+    private DatagramPacket packet = new DatagramPacket(new byte[1500], 1500); // Larger than any snapshot
+    private DatagramPacket hello;
+    private int round;
+    private int lastTick = -1; // The tick of the last snapshot used in the round, or -1 if none has been used
+    private int discarded; // Datagrams thrown away in the round
+    private long bytesReceived; // All datagrams received, including those thrown away
+
+    public UdpSnapshotReceiver(InetAddress host, int port, int token) throws IOException {
+        socket = new DatagramSocket();
+        socket.setSoTimeout(HELLO_INTERVAL);
+        byte[] bytes = {(byte) (token >> 24), (byte) (token >> 16), (byte) (token >> 8), (byte) token};
+        hello = new DatagramPacket(bytes, bytes.length, host, port);
+        socket.send(hello); // Tell the server where to send the snapshots
+    }
+
+    public void startRound(int round) {
+        this.round = round;
+        lastTick = -1;
+        discarded = 0;
+    }
+
+    /**
+     * This method waits for the next snapshot of the round and returns it, ready to be decoded. It returns null if a snapshot of a later round arrives,
+     * which means that all the datagrams with the end of this round were lost
+     */
+    public DataInput receive() throws IOException {
+        while (true) {
+            try {
+                packet.setLength(packet.getData().length);
+                socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                socket.send(hello); // Either the token or the snapshots were lost, or it's the pause between rounds. Sending the token again does no harm
+                continue;
+            }
+
+            bytesReceived += packet.getLength();
+            byte[] data = packet.getData();
+            if (packet.getLength() < 4) { // The round number, the header and the tick
+                discarded++;
+                continue;
+            }
+
+            int packetRound = data[0] & 0xFF;
+            int tick = (data[2] & 0xFF) << 8 | data[3] & 0xFF;
+            if (packetRound > round)
+                return null;
+            if (packetRound < round || (lastTick != -1 && (short) (tick - lastTick) <= 0)) { // Compared as shorts, like the ticks of the inputs
+                discarded++;
+                continue;
+            }
+
+            lastTick = tick;
+            return new DataInputStream(new ByteArrayInputStream(data, 1, packet.getLength() - 1));
+        }
+    }
+
+    /**
+     * This method returns the number of datagrams thrown away in the round because they were late or repeated
+     */
+    public int getDiscarded() {
+        return discarded;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void close() {
+        socket.close();
+    }
+}
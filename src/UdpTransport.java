@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the snapshots of every tick as UDP datagrams instead of on the game connection. The lobby messages, the inputs and the chat still use TCP.
+ * <p>
+ * A datagram can be lost or arrive out of order, so it can't carry a delta. Every datagram is the round number (byte) followed by a full snapshot, see SnapshotCodec.
+ * The tick of the snapshot is the sequence number: the client throws away any datagram that isn't newer than the last one it used, see UdpSnapshotReceiver.
+ * A full snapshot has the dead/alive status of every player and the coordinates where the dead players died, so a death is repeated in every later datagram and
+ * is never lost unless the round ends. The datagram with the last tick of a round is therefore sent ROUND_OVER_REPEATS more times.
+ * <p>
+ * The server learns where to send the datagrams from the client: the all ready message contains a token, and the client sends the token from its UDP socket
+ * to the game port until the snapshots arrive.
+ */
+public class UdpTransport implements Runnable {
+    private static final int ROUND_OVER_REPEATS = 3;
+
+    private int port;
+    private long tickPeriod;
+    private double loss; // The fraction of datagrams that are thrown away instead of sent, to simulate packet loss
+    private ScheduledExecutorService scheduler;
+    private DatagramChannel channel;
+    private Map<Integer, Endpoint> endpoints = new ConcurrentHashMap<>(); // The endpoints by their token
+
+    public UdpTransport(int port, ServerOptions options, ScheduledExecutorService scheduler) throws IOException {
+        this.port = port;
+        this.scheduler = scheduler;
+        tickPeriod = options.getTickPeriod();
+        loss = options.getUdpLoss();
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port)); // Bound before run is called, so datagrams can be sent as soon as a client has registered
+    }
+
+    /**
+     * This method receives the tokens the clients send and remembers which address each token came from
+     */
+    @Override
+    public void run() {
+        AsyncLogger.log("UDP snapshots sent from port " + port + " at " + new Date() + (loss > 0 ? ", simulating " + loss * 100 + "% packet loss" : ""));
+        ByteBuffer buffer = ByteBuffer.allocate(64); // Larger than a token, so a longer datagram isn't cut down to one
+
+        while (true) {
+            try {
+                buffer.clear();
+                SocketAddress address = channel.receive(buffer);
+                if (buffer.position() != Integer.BYTES)
+                    continue; // Not a token
+
+                Endpoint endpoint = endpoints.get(buffer.getInt(0));
+                if (endpoint != null)
+                    endpoint.address = address; // The client may send the token more than once, e.g. if its first datagrams were lost
+            } catch (IOException e) {
+                AsyncLogger.log("UDP receive failed", e); // A datagram that can't be received only affects that datagram
+            }
+        }
+    }
+
+    /**
+     * This method returns a new endpoint for a game connection. Datagrams are sent to it once the client has sent its token
+     */
+    Endpoint openEndpoint() {
+        while (true) {
+            int token = ThreadLocalRandom.current().nextInt();
+            Endpoint endpoint = new Endpoint(token);
+            if (token != 0 && endpoints.putIfAbsent(token, endpoint) == null) // 0 means that the snapshots are sent on the game connection
+                return endpoint;
+        }
+    }
+
+    class Endpoint {
+        private final int token;
+        private volatile SocketAddress address; // Where the client receives the datagrams, or null if its token hasn't arrived yet
+        private int round; // The round of the snapshots. Only used by the engine thread
+        private volatile ByteBuffer lastDatagram; // The datagram of the last tick, which is sent again when the round is over
+
+        Endpoint(int token) {
+            this.token = token;
+        }
+
+        int getToken() {
+            return token;
+        }
+
+        /**
+         * This method sends a full snapshot and returns the size of the datagram, or 0 if the address of the client isn't known yet. The snapshot is copied, so it is only used during the call
+         */
+        int send(ByteBuffer fullSnapshot) {
+            ByteBuffer datagram = ByteBuffer.allocate(1 + fullSnapshot.remaining());
+            datagram.put((byte) round).put(fullSnapshot.duplicate()).flip();
+            lastDatagram = datagram;
+            return sendDatagram(datagram) ? datagram.remaining() : 0;
+        }
+
+        /**
+         * This method sends the last datagram of the round again a few times, spaced out by a tick, since no later datagram of the round will repeat it
+         */
+        void endRound() {
+            ByteBuffer datagram = lastDatagram;
+            lastDatagram = null;
+            round++;
+            if (datagram == null)
+                return;
+
+            for (int i = 1; i <= ROUND_OVER_REPEATS; i++)
+                scheduler.schedule(() -> sendDatagram(datagram), i * tickPeriod, TimeUnit.NANOSECONDS);
+        }
+
+        // Returns whether the datagram was sent. A datagram thrown away by the loss simulation counts as sent, since it is lost on the way
+        private boolean sendDatagram(ByteBuffer datagram) {
+            SocketAddress address = this.address;
+            if (address == null)
+                return false;
+            if (ThreadLocalRandom.current().nextDouble() < loss)
+                return true;
+
+            try {
+                channel.send(datagram.duplicate(), address); // Duplicate so the datagram can be sent again
+                return true;
+            } catch (IOException e) {
+                AsyncLogger.log("UDP send to " + address + " failed", e); // Losing a datagram is expected, so the connection isn't closed
+                return false;
+            }
+        }
+
+        void close() {
+            endpoints.remove(token);
+        }
+    }
+}
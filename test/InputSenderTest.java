@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputSenderTest {
+    private ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    private InputSender inputSender = new InputSender(new DataOutputStream(sent));
+    private Predictor predictor;
+
+    @BeforeEach
+    void startRound() {
+        predictor = new Predictor((byte) 0);
+        inputSender.startRound(predictor);
+    }
+
+    @Test
+    void inputInTheGapBetweenRoundsIsSentWithTheFirstSnapshot() throws IOException {
+        inputSender.setDirection((byte) -1); // The round is over on the client, but hasn't started on the server
+        assertEquals(0, sent.size(), "An input sent before the round starts on the server is thrown away by it");
+
+        receiveSnapshot(0);
+        List<InputMessage> batch = lastBatch();
+        assertEquals(1, batch.size());
+        assertEquals(-1, batch.get(0).getDirection());
+        assertTrue(batch.get(0).getTick() > 0, "The input must be for a tick the server hasn't played yet");
+    }
+
+    @Test
+    void directionChangedBackInTheGapIsNotSent() throws IOException {
+        inputSender.setDirection((byte) 1);
+        inputSender.setDirection((byte) 0);
+        receiveSnapshot(0);
+        assertEquals(0, sent.size(), "The server starts the round going straight, so there is nothing to send");
+    }
+
+    @Test
+    void inputInTheGapOfTheNextRoundIsSentAgain() throws IOException {
+        receiveSnapshot(0);
+        inputSender.setDirection((byte) 1); // Played in the first round
+        receiveSnapshot(1);
+
+        startRound(); // The server goes straight again. The client must send the turn even though it was the last direction sent
+        inputSender.setDirection((byte) 1);
+        sent.reset();
+        receiveSnapshot(0);
+
+        List<InputMessage> batch = lastBatch();
+        InputMessage newest = batch.get(batch.size() - 1);
+        assertEquals(1, newest.getDirection());
+        assertTrue(newest.isNewerThan(batch.get(0).getSequence()), "Sequence numbers go on across rounds, so the server doesn't take the input for an old one");
+    }
+
+    @Test
+    void sameDirectionIsSentOnce() throws IOException {
+        receiveSnapshot(0);
+        inputSender.setDirection((byte) -1);
+        int size = sent.size();
+        inputSender.setDirection((byte) -1); // A key held down repeats the key press
+        assertEquals(size, sent.size());
+    }
+
+    private void receiveSnapshot(int tick) throws IOException {
+        predictor.reconcile(tick, 100, 100, 0, false);
+        inputSender.snapshotReceived();
+    }
+
+    // Reads the batches that have been sent and returns the last one
+    private List<InputMessage> lastBatch() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(sent.toByteArray()));
+        List<InputMessage> batch = new ArrayList<>();
+        while (in.available() > 0) {
+            batch.clear();
+            int count = InputMessage.checkCount(in.readUnsignedByte());
+            for (int i = 0; i < count; i++)
+                batch.add(InputMessage.read(in));
+        }
+        return batch;
+    }
+}
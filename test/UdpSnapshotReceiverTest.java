@@ -0,0 +1,160 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UdpSnapshotReceiverTest {
+    private static final int PLAYERS = 3;
+    private static final int TICKS = 100;
+
+    @Test
+    @Timeout(20)
+    void clientRecoversFromLostDatagramsWithTheFullSnapshots() throws Exception {
+        int port;
+        try (DatagramSocket free = new DatagramSocket(0)) {
+            port = free.getLocalPort();
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        UdpTransport transport = new UdpTransport(port, new ServerOptions(new String[]{"--snapshots=udp", "--udp-loss=0.5"}), scheduler);
+        Thread transportThread = new Thread(transport, "UDP transport");
+        transportThread.setDaemon(true);
+        transportThread.start();
+
+        UdpTransport.Endpoint endpoint = transport.openEndpoint();
+        UdpSnapshotReceiver receiver = new UdpSnapshotReceiver(InetAddress.getLoopbackAddress(), port, endpoint.getToken());
+
+        Map<Integer, GameState> states = new HashMap<>();
+        for (int tick = 0; tick < TICKS; tick++)
+            states.put(tick, stateOfTick(tick));
+
+        Thread server = new Thread(() -> {
+            try {
+                FrameBuffer buffer = new FrameBuffer(256);
+                buffer.reset();
+                SnapshotCodec.encodeFull(buffer, states.get(0));
+                while (endpoint.send(buffer.toByteBuffer()) == 0)
+                    Thread.sleep(10); // Until the token has arrived. Tick 0 may go out several times, which the receiver throws away
+
+                for (int tick = 1; tick < TICKS; tick++) {
+                    buffer.reset();
+                    SnapshotCodec.encodeFull(buffer, states.get(tick));
+                    endpoint.send(buffer.toByteBuffer());
+                    Thread.sleep(1);
+                }
+
+                endpoint.endRound();
+                buffer.reset();
+                SnapshotCodec.encodeFull(buffer, stateOfTick(0));
+                for (int i = 0; i < 50; i++) { // Half of them are lost, but one is enough to end the round on the client
+                    endpoint.send(buffer.toByteBuffer());
+                    Thread.sleep(5);
+                }
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        receiver.startRound(0);
+        SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder(PLAYERS); // One decoder for the round, like the client
+        List<Integer> ticks = new ArrayList<>();
+        DataInput snapshot;
+        while ((snapshot = receiver.receive()) != null) {
+            decoder.decode(snapshot);
+            GameState state = states.get((int) decoder.getTick());
+            assertNotNull(state);
+            for (int i = 0; i < PLAYERS; i++) { // The snapshot after a gap has the whole state, not a change from a snapshot the client never got
+                assertEquals(state.getX(i), decoder.getX(i), 1 / 32.0);
+                assertEquals(state.getY(i), decoder.getY(i), 1 / 32.0);
+                assertEquals(state.getAngle(i), decoder.getAngle(i));
+                assertEquals(state.isDead(i), decoder.isDead(i));
+            }
+            ticks.add((int) decoder.getTick());
+        }
+        receiver.close();
+        endpoint.close();
+        scheduler.shutdownNow();
+
+        assertTrue(ticks.size() > 1, "Some snapshots must arrive: " + ticks);
+        assertTrue(ticks.size() < TICKS, "With half of the datagrams lost, some ticks must be missing: " + ticks);
+        for (int i = 1; i < ticks.size(); i++)
+            assertTrue(ticks.get(i) > ticks.get(i - 1), "The ticks must only go forward: " + ticks);
+    }
+
+    @Test
+    @Timeout(10)
+    void reorderedAndOldTicksAreIgnored() throws IOException {
+        try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            UdpSnapshotReceiver receiver = new UdpSnapshotReceiver(InetAddress.getLoopbackAddress(), server.getLocalPort(), 1234);
+            DatagramPacket hello = new DatagramPacket(new byte[4], 4);
+            server.receive(hello);
+            SocketAddress client = hello.getSocketAddress();
+
+            receiver.startRound(0);
+            send(server, client, 0, 5);
+            send(server, client, 0, 3); // Older than 5
+            send(server, client, 0, 5); // A repeat
+            send(server, client, 0, 4); // Overtaken by 5
+            send(server, client, 0, 7);
+            send(server, client, 1, 1); // The next round
+            assertEquals(5, tickOf(receiver.receive()));
+            assertEquals(7, tickOf(receiver.receive()));
+            assertNull(receiver.receive(), "A datagram of a later round ends the round");
+            assertEquals(3, receiver.getDiscarded());
+
+            receiver.startRound(1);
+            send(server, client, 0, 9); // Late from the last round
+            send(server, client, 1, 2);
+            assertEquals(2, tickOf(receiver.receive()));
+            assertEquals(1, receiver.getDiscarded());
+            receiver.close();
+        }
+    }
+
+    // The positions change every tick, so a snapshot decoded with the state of another tick would be noticed
+    private static GameState stateOfTick(int tick) {
+        boolean[] dead = new boolean[PLAYERS];
+        double[] x = new double[PLAYERS], y = new double[PLAYERS];
+        int[] angles = new int[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            dead[i] = i == 0 && tick >= TICKS / 2;
+            x[i] = 10 + i * 50 + tick * 1.5;
+            y[i] = 20 + i * 30 + tick * 0.75;
+            angles[i] = (tick * 7 + i * 90) % 360;
+        }
+        return new GameState(tick, dead, x, y, angles);
+    }
+
+    // Sends a datagram the way UdpTransport does: the round followed by a full snapshot
+    private static void send(DatagramSocket server, SocketAddress client, int round, int tick) throws IOException {
+        FrameBuffer buffer = new FrameBuffer(256);
+        buffer.writeByte(round);
+        SnapshotCodec.encodeFull(buffer, stateOfTick(tick));
+        ByteBuffer datagram = buffer.toByteBuffer();
+        server.send(new DatagramPacket(datagram.array(), datagram.remaining(), client));
+    }
+
+    private static int tickOf(DataInput snapshot) throws IOException {
+        SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder(PLAYERS);
+        decoder.decode(snapshot);
+        return decoder.getTick();
+    }
+}